@@ -0,0 +1,93 @@
+package editortrees;
+
+/**
+ * A position in an EditTree that moves with the text around it: a bookmark,
+ * breakpoint, diagnostic or one end of a selection. Make anchors with
+ * AnchorSet.create(); offset() gives the current position in O(log n).
+ *
+ * When text is inserted exactly at an anchor, LEFT gravity keeps the anchor
+ * before the new text and RIGHT gravity moves it after. When the text around
+ * an anchor is deleted, the anchor moves to the start of the deletion.
+ *
+ * Each anchor is also its own node in the AnchorSet's treap, so making one
+ * allocates nothing else.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class Anchor {
+
+	public enum Gravity {
+		LEFT, RIGHT
+	}
+
+	final Gravity gravity;
+	AnchorSet set; // null once removed
+
+	// treap links; offset is exact once every ancestor's shift has been added
+	Anchor left, right, parent;
+	int offset;
+	int shift; // still to be added to everything below this anchor
+	final int priority;
+
+	Anchor(AnchorSet set, int offset, Gravity gravity, int priority) {
+		this.set = set;
+		this.offset = offset;
+		this.gravity = gravity;
+		this.priority = priority;
+	}
+
+	/**
+	 * @return the anchor's current position in the tree
+	 * @throws IllegalStateException if the anchor has been removed
+	 */
+	public int offset() {
+		if (this.set == null) {
+			throw new IllegalStateException("anchor was removed");
+		}
+		int offset = this.offset;
+		for (Anchor a = this.parent; a != null; a = a.parent) {
+			offset += a.shift;
+		}
+		return offset;
+	}
+
+	public Gravity gravity() {
+		return this.gravity;
+	}
+
+	/**
+	 * @return false once the anchor has been removed from its set
+	 */
+	public boolean isAttached() {
+		return this.set != null;
+	}
+
+	/**
+	 * Stops tracking this anchor. Does nothing if it was already removed.
+	 */
+	public void remove() {
+		if (this.set != null) {
+			this.set.remove(this);
+		}
+	}
+
+	// Passes the pending shift on to the children.
+	void push() {
+		if (this.shift != 0) {
+			if (this.left != null) {
+				this.left.offset += this.shift;
+				this.left.shift += this.shift;
+			}
+			if (this.right != null) {
+				this.right.offset += this.shift;
+				this.right.shift += this.shift;
+			}
+			this.shift = 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.set == null ? "removed" : this.offset() + (this.gravity == Gravity.LEFT ? "<" : ">");
+	}
+}
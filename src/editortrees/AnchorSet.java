@@ -0,0 +1,255 @@
+package editortrees;
+
+/**
+ * The anchors of one EditTree, kept up to date as the tree is edited. Anchors
+ * are held in a treap ordered by offset, where a shift of every anchor after
+ * an edit is recorded once, near the root, and handed down lazily. An edit
+ * therefore costs O(log n) in the number of anchors plus the anchors sitting
+ * right at the edit, and offset() walks up adding the pending shifts, also
+ * O(log n). Anchors elsewhere in the text are never visited.
+ *
+ * The set listens to the tree it was made for. Like EditTree, it is not
+ * thread-safe; use it from the thread that edits the tree.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class AnchorSet implements EditListener {
+
+	private final EditTree tree;
+	private Anchor root;
+	private int size;
+	private int seed = 0x2545F491;
+
+	// results of split(), so it doesn't have to allocate a pair
+	private Anchor splitLeft, splitRight;
+	// scratch for regrouping the anchors at an insertion point by gravity
+	private Anchor[] atPoint = new Anchor[16];
+	private int atPointCount;
+
+	/**
+	 * Makes an empty set and starts listening to tree.
+	 *
+	 * @param tree tree whose edits move the anchors
+	 */
+	public AnchorSet(EditTree tree) {
+		this.tree = tree;
+		tree.addEditListener(this);
+	}
+
+	/**
+	 * Stops following the tree's edits. The anchors keep their last offsets.
+	 */
+	public void detach() {
+		this.tree.removeEditListener(this);
+	}
+
+	/**
+	 * @param offset  position in the tree, from 0 to its size inclusive
+	 * @param gravity which side of text inserted at offset the anchor ends up on
+	 * @return a new anchor at offset
+	 * @throws IndexOutOfBoundsException if offset is outside the tree
+	 */
+	public Anchor create(int offset, Anchor.Gravity gravity) {
+		if (offset < 0 || offset > this.tree.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		Anchor anchor = new Anchor(this, offset, gravity, this.nextPriority());
+		// after any anchors already at offset
+		this.split(this.root, offset + 1);
+		Anchor after = this.splitRight;
+		this.root = this.merge(this.merge(this.splitLeft, anchor), after);
+		this.root.parent = null;
+		this.size++;
+		return anchor;
+	}
+
+	/**
+	 * @return the number of anchors in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	void remove(Anchor anchor) {
+		anchor.push();
+		Anchor joined = this.merge(anchor.left, anchor.right);
+		Anchor parent = anchor.parent;
+		if (joined != null) {
+			joined.parent = parent;
+		}
+		if (parent == null) {
+			this.root = joined;
+		} else if (parent.left == anchor) {
+			parent.left = joined;
+		} else {
+			parent.right = joined;
+		}
+		anchor.left = null;
+		anchor.right = null;
+		anchor.parent = null;
+		anchor.set = null;
+		this.size--;
+	}
+
+	@Override
+	public void inserted(int pos, char ch) {
+		this.insertedLength(pos, 1);
+	}
+
+	@Override
+	public void inserted(int pos, CharSequence text) {
+		this.insertedLength(pos, text.length());
+	}
+
+	private void insertedLength(int pos, int length) {
+		if (this.root == null) {
+			return;
+		}
+		this.split(this.root, pos);
+		Anchor before = this.splitLeft;
+		this.split(this.splitRight, pos + 1);
+		Anchor at = this.splitLeft;
+		Anchor after = this.splitRight;
+		shift(after, length);
+		Anchor stay = null;
+		Anchor moved = null;
+		if (at != null) {
+			// regroup by gravity: LEFT anchors stay at pos, RIGHT ones follow the text
+			this.atPointCount = 0;
+			this.collect(at);
+			for (int i = 0; i < this.atPointCount; i++) {
+				Anchor a = this.atPoint[i];
+				this.atPoint[i] = null;
+				a.left = null;
+				a.right = null;
+				if (a.gravity == Anchor.Gravity.LEFT) {
+					stay = this.merge(stay, a);
+				} else {
+					a.offset += length;
+					moved = this.merge(moved, a);
+				}
+			}
+		}
+		this.root = this.merge(this.merge(before, stay), this.merge(moved, after));
+		this.root.parent = null;
+	}
+
+	@Override
+	public void deleted(int pos, int length) {
+		if (this.root == null) {
+			return;
+		}
+		this.split(this.root, pos);
+		Anchor before = this.splitLeft;
+		this.split(this.splitRight, pos + length);
+		Anchor inside = this.splitLeft;
+		Anchor after = this.splitRight;
+		// anchors in the deleted text all end up where it started; they stay in
+		// order since they are now equal
+		this.collapse(inside, pos);
+		shift(after, -length);
+		this.root = this.merge(this.merge(before, inside), after);
+		if (this.root != null) {
+			this.root.parent = null;
+		}
+	}
+
+	// Moves every anchor of a subtree by delta, in O(1).
+	private static void shift(Anchor subtree, int delta) {
+		if (subtree != null) {
+			subtree.offset += delta;
+			subtree.shift += delta;
+		}
+	}
+
+	private void collapse(Anchor subtree, int offset) {
+		if (subtree != null) {
+			subtree.shift = 0; // everything below is being overwritten anyway
+			subtree.offset = offset;
+			this.collapse(subtree.left, offset);
+			this.collapse(subtree.right, offset);
+		}
+	}
+
+	// In-order copy of a subtree into atPoint, with shifts pushed down.
+	private void collect(Anchor subtree) {
+		if (subtree == null) {
+			return;
+		}
+		subtree.push();
+		this.collect(subtree.left);
+		if (this.atPointCount == this.atPoint.length) {
+			Anchor[] bigger = new Anchor[this.atPointCount * 2];
+			System.arraycopy(this.atPoint, 0, bigger, 0, this.atPointCount);
+			this.atPoint = bigger;
+		}
+		this.atPoint[this.atPointCount++] = subtree;
+		this.collect(subtree.right);
+	}
+
+	// Splits t into the anchors before key and the rest, leaving the two roots,
+	// detached, in splitLeft and splitRight.
+	private void split(Anchor t, int key) {
+		this.splitInto(t, key);
+		if (this.splitLeft != null) {
+			this.splitLeft.parent = null;
+		}
+		if (this.splitRight != null) {
+			this.splitRight.parent = null;
+		}
+	}
+
+	private void splitInto(Anchor t, int key) {
+		if (t == null) {
+			this.splitLeft = null;
+			this.splitRight = null;
+			return;
+		}
+		t.push();
+		if (t.offset < key) {
+			this.splitInto(t.right, key);
+			t.right = this.splitLeft;
+			if (t.right != null) {
+				t.right.parent = t;
+			}
+			this.splitLeft = t;
+		} else {
+			this.splitInto(t.left, key);
+			t.left = this.splitRight;
+			if (t.left != null) {
+				t.left.parent = t;
+			}
+			this.splitRight = t;
+		}
+	}
+
+	// Joins two treaps where every anchor of a comes before every anchor of b.
+	private Anchor merge(Anchor a, Anchor b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.push();
+			a.right = this.merge(a.right, b);
+			a.right.parent = a;
+			return a;
+		}
+		b.push();
+		b.left = this.merge(a, b.left);
+		b.left.parent = b;
+		return b;
+	}
+
+	// xorshift; the treap only needs priorities that don't follow the offsets
+	private int nextPriority() {
+		int x = this.seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		this.seed = x;
+		return x;
+	}
+}
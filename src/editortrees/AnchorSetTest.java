@@ -0,0 +1,140 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that anchors follow edits the same way a plain list of offsets shifted
+ * on every edit would.
+ */
+public class AnchorSetTest {
+
+	@Test
+	public void testGravityAtInsertionPoint() {
+		EditTree t = new EditTree("abcdef");
+		AnchorSet anchors = new AnchorSet(t);
+		Anchor stays = anchors.create(3, Anchor.Gravity.LEFT);
+		Anchor moves = anchors.create(3, Anchor.Gravity.RIGHT);
+		Anchor later = anchors.create(5, Anchor.Gravity.LEFT);
+		t.add('x', 3);
+		assertEquals(3, stays.offset());
+		assertEquals(4, moves.offset());
+		assertEquals(6, later.offset());
+		t.append("gh");
+		assertEquals(6, later.offset());
+	}
+
+	@Test
+	public void testDeletionCollapsesAnchors() {
+		EditTree t = new EditTree("abcdef");
+		AnchorSet anchors = new AnchorSet(t);
+		Anchor before = anchors.create(1, Anchor.Gravity.RIGHT);
+		Anchor inside = anchors.create(3, Anchor.Gravity.RIGHT);
+		Anchor after = anchors.create(5, Anchor.Gravity.LEFT);
+		t.delete(2);
+		t.delete(2);
+		assertEquals(1, before.offset());
+		assertEquals(2, inside.offset());
+		assertEquals(3, after.offset());
+		// the collapsed anchor keeps its gravity
+		t.add('y', 2);
+		assertEquals(3, inside.offset());
+	}
+
+	@Test
+	public void testRangeDeletion() {
+		EditTree t = new EditTree("abcdefgh");
+		AnchorSet anchors = new AnchorSet(t);
+		Anchor[] all = new Anchor[9];
+		for (int i = 0; i <= 8; i++) {
+			all[i] = anchors.create(i, Anchor.Gravity.LEFT);
+		}
+		anchors.deleted(2, 3); // as a listener would hear "cde" go
+		int[] expected = { 0, 1, 2, 2, 2, 2, 3, 4, 5 };
+		for (int i = 0; i <= 8; i++) {
+			assertEquals(expected[i], all[i].offset());
+		}
+	}
+
+	@Test
+	public void testRemoveAndDetach() {
+		EditTree t = new EditTree("abc");
+		AnchorSet anchors = new AnchorSet(t);
+		Anchor a = anchors.create(1, Anchor.Gravity.LEFT);
+		Anchor b = anchors.create(2, Anchor.Gravity.LEFT);
+		a.remove();
+		a.remove();
+		assertFalse(a.isAttached());
+		assertEquals(1, anchors.size());
+		anchors.detach();
+		t.add('z', 0);
+		assertEquals(2, b.offset());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testCreatePastEnd() {
+		new AnchorSet(new EditTree("abc")).create(4, Anchor.Gravity.LEFT);
+	}
+
+	@Test
+	public void testRandomEditsMatchShiftingOffsets() {
+		Random random = new Random(41);
+		EditTree t = new EditTree("0123456789");
+		AnchorSet anchors = new AnchorSet(t);
+		List<Anchor> live = new ArrayList<>();
+		List<int[]> expected = new ArrayList<>(); // offset, gravity ordinal
+		for (int i = 0; i < 20000; i++) {
+			int choice = random.nextInt(10);
+			if (choice < 3) {
+				int offset = random.nextInt(t.size() + 1);
+				Anchor.Gravity gravity = Anchor.Gravity.values()[random.nextInt(2)];
+				live.add(anchors.create(offset, gravity));
+				expected.add(new int[] { offset, gravity.ordinal() });
+			} else if (choice < 4 && !live.isEmpty()) {
+				int k = random.nextInt(live.size());
+				live.remove(k).remove();
+				expected.remove(k);
+			} else if (choice < 6 && t.size() > 0) {
+				int pos = random.nextInt(t.size());
+				t.delete(pos);
+				for (int[] e : expected) {
+					if (e[0] > pos) {
+						e[0]--;
+					}
+				}
+			} else if (choice < 7) {
+				int length = 1 + random.nextInt(5);
+				int pos = t.size();
+				t.append("abcde".substring(0, length));
+				for (int[] e : expected) {
+					if (e[0] == pos && e[1] == Anchor.Gravity.RIGHT.ordinal()) {
+						e[0] += length;
+					}
+				}
+			} else {
+				int pos = random.nextInt(t.size() + 1);
+				t.add('+', pos);
+				for (int[] e : expected) {
+					if (e[0] > pos || (e[0] == pos && e[1] == Anchor.Gravity.RIGHT.ordinal())) {
+						e[0]++;
+					}
+				}
+			}
+			if (i % 500 == 0) {
+				for (int k = 0; k < live.size(); k++) {
+					assertEquals(expected.get(k)[0], live.get(k).offset());
+				}
+			}
+		}
+		assertEquals(live.size(), anchors.size());
+		for (int k = 0; k < live.size(); k++) {
+			assertEquals(expected.get(k)[0], live.get(k).offset());
+		}
+	}
+}
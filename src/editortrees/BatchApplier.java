@@ -0,0 +1,127 @@
+package editortrees;
+
+/**
+ * Applies a sorted list of edits that don't overlap to a tree in one walk down
+ * from the root. Each subtree is handed the edits that fall in it, found from
+ * the ranks, so a subtree no edit touches is kept as it is. On the way back up
+ * each node is joined in between its edited children again, or left out if an
+ * edit deletes it. k edits visit O(k log(n/k)) nodes, since they all share the
+ * top of the tree, instead of k separate descents from the root.
+ *
+ * Edit i replaces [starts[i], ends[i]) with texts[i]. Inside a subtree an
+ * edit's range is cut down to the subtree's positions, and its text goes in
+ * only where the edit starts.
+ */
+class BatchApplier {
+
+	private final int[] starts;
+	private final int[] ends;
+	private final CharSequence[] texts;
+	private final RotationTracker tracker;
+
+	// of the subtree apply() last returned
+	int size;
+	int height;
+
+	BatchApplier(int[] starts, int[] ends, CharSequence[] texts, RotationTracker tracker) {
+		this.starts = starts;
+		this.ends = ends;
+		this.texts = texts;
+		this.tracker = tracker;
+	}
+
+	// Applies edits [lo, hi) to t, which holds positions [offset, offset + size)
+	// and is height tall, and returns the new root, leaving its size and height
+	// in this.size and this.height. Passing the heights down saves join() from
+	// measuring them, which would walk down to the leaves at every node.
+	Node apply(Node t, int size, int height, int offset, int lo, int hi) {
+		if (lo == hi) {
+			this.size = size;
+			this.height = height;
+			return t;
+		}
+		if (t == Node.NULL_NODE) {
+			return this.inserted(offset, lo, hi);
+		}
+		if (hi - lo == 1 && this.starts[lo] <= offset && this.ends[lo] >= offset + size) {
+			// one edit deletes all of t; no need to take it apart node by node
+			Node.retireAll(t, this.tracker);
+			return this.inserted(offset, lo, hi);
+		}
+		Node left = t.left;
+		Node right = t.right;
+		int leftSize = t.rank;
+		int leftHeight = t.balance == Node.Code.RIGHT ? height - 2 : height - 1;
+		int rightHeight = t.balance == Node.Code.LEFT ? height - 2 : height - 1;
+		int pos = offset + leftSize; // of t
+		// edits starting at or before t go left: text inserted just before t ends
+		// up at the end of the left subtree
+		int mid = this.firstAfter(pos, lo, hi);
+		boolean deleted = mid > lo && this.ends[mid - 1] > pos;
+		int rightLo = deleted && this.ends[mid - 1] > pos + 1 ? mid - 1 : mid;
+		left = this.apply(left, leftSize, leftHeight, offset, lo, mid);
+		leftSize = this.size;
+		leftHeight = this.height;
+		right = this.apply(right, size - t.rank - 1, rightHeight, pos + 1, rightLo, hi);
+		int rightSize = this.size;
+		rightHeight = this.height;
+		Node joined;
+		if (deleted) {
+			this.tracker.retire(t);
+			this.size = leftSize + rightSize;
+			joined = Node.concat(left, leftSize, right, this.tracker);
+			this.height = joined.height();
+		} else {
+			this.size = leftSize + 1 + rightSize;
+			joined = Node.join(left, leftSize, leftHeight, t, right, rightHeight, this.tracker);
+			// t just goes on top unless one side is more than one taller
+			this.height = Math.abs(leftHeight - rightHeight) <= 1 ? Math.max(leftHeight, rightHeight) + 1
+					: joined.height();
+		}
+		return joined;
+	}
+
+	// First edit in [lo, hi) that starts after pos, or hi.
+	private int firstAfter(int pos, int lo, int hi) {
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if (this.starts[m] <= pos) {
+				lo = m + 1;
+			} else {
+				hi = m;
+			}
+		}
+		return lo;
+	}
+
+	// Builds what edits [lo, hi) insert at offset, where the tree has nothing
+	// left, as a new balanced subtree.
+	private Node inserted(int offset, int lo, int hi) {
+		CharSequence text = null;
+		StringBuilder several = null;
+		for (int i = lo; i < hi; i++) {
+			if (this.starts[i] < offset || this.texts[i].length() == 0) {
+				continue; // started further left, where its text went in
+			}
+			if (text == null) {
+				text = this.texts[i];
+			} else {
+				if (several == null) {
+					several = new StringBuilder(text);
+				}
+				several.append(this.texts[i]);
+			}
+		}
+		if (several != null) {
+			text = several;
+		}
+		if (text == null) {
+			this.size = 0;
+			this.height = -1;
+			return Node.NULL_NODE;
+		}
+		this.size = text.length();
+		this.height = Node.balancedHeight(this.size);
+		return EditTree.build(text, 0, this.size, this.tracker.brackets);
+	}
+}
@@ -0,0 +1,72 @@
+package editortrees;
+
+/**
+ * The bracket pairs whose nesting a tree's nodes summarize for
+ * EditTree.matchingBracket(). Opening brackets count +1 and closing ones -1,
+ * and each node keeps the net count of its subtree and the lowest running
+ * count over it. The pairs share one count, so ( ] is not told apart from
+ * ( ) until the match is found; matchingBracket() then checks the kinds.
+ *
+ * Each tree gets its pairs from EditTree.enableSummaries(), so trees holding
+ * different languages can match different brackets.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class Brackets {
+
+	/**
+	 * Parentheses, square brackets and braces.
+	 */
+	public static final Brackets DEFAULT = new Brackets("()[]{}");
+
+	private final String pairs;
+	private final byte[] ascii = new byte[128];
+
+	/**
+	 * @param pairs the brackets, each opening bracket followed by its closing
+	 *              one, e.g. "()[]{}<>"
+	 * @throws IllegalArgumentException if pairs has an odd length or lists a
+	 *                                  character twice
+	 */
+	public Brackets(String pairs) {
+		if (pairs.length() % 2 != 0) {
+			throw new IllegalArgumentException("bracket pairs must come in twos: " + pairs);
+		}
+		for (int i = 0; i < pairs.length(); i++) {
+			char c = pairs.charAt(i);
+			if (pairs.indexOf(c) != i) {
+				throw new IllegalArgumentException("bracket listed twice: " + c);
+			}
+			if (c < 128) {
+				this.ascii[c] = (byte) (i % 2 == 0 ? 1 : -1);
+			}
+		}
+		this.pairs = pairs;
+	}
+
+	/**
+	 * @return +1 for an opening bracket, -1 for a closing one, otherwise 0
+	 */
+	public int value(char c) {
+		return c < 128 ? this.ascii[c] : this.valueBeyondAscii(c);
+	}
+
+	// kept out of value(), which is inlined wherever a node's data is set
+	private int valueBeyondAscii(char c) {
+		int i = this.pairs.indexOf(c);
+		return i < 0 ? 0 : i % 2 == 0 ? 1 : -1;
+	}
+
+	/**
+	 * @return the other bracket of c's pair, or '\0' if c is not a bracket
+	 */
+	public char partner(char c) {
+		int i = this.pairs.indexOf(c);
+		return i < 0 ? '\0' : this.pairs.charAt(i ^ 1);
+	}
+
+	@Override
+	public String toString() {
+		return this.pairs;
+	}
+}
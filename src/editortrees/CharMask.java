@@ -0,0 +1,55 @@
+package editortrees;
+
+/**
+ * Maps characters to the bits of the 64-bit presence masks that every node
+ * keeps for its subtree. The characters searched for most, such as line
+ * breaks, brackets, quotes and operators, get a bit of their own, so a clear bit
+ * proves a subtree has none of them. Letters share a bit with their other case,
+ * digits share one bit, and the remaining ASCII characters and everything
+ * beyond ASCII get one bit per group, so for those a set bit only means
+ * "maybe".
+ *
+ * @author Kunaal and Tulsi
+ */
+public class CharMask {
+
+	// one bit each, in this order
+	private static final String OWN_BITS = "\n\r\t ()[]{}<>\"'`;,.:=+-*/\\#!?&|^~%$_";
+
+	private static final long[] ASCII = new long[128];
+	private static final long OTHER_ASCII;
+	private static final long NON_ASCII;
+
+	static {
+		int bit = 0;
+		for (int i = 0; i < OWN_BITS.length(); i++) {
+			ASCII[OWN_BITS.charAt(i)] = 1L << bit++;
+		}
+		for (char c = 'a'; c <= 'z'; c++) {
+			ASCII[c] = 1L << bit;
+			ASCII[Character.toUpperCase(c)] = 1L << bit;
+			bit++;
+		}
+		long digit = 1L << bit++;
+		for (char c = '0'; c <= '9'; c++) {
+			ASCII[c] = digit;
+		}
+		OTHER_ASCII = 1L << bit++;
+		for (int c = 0; c < 128; c++) {
+			if (ASCII[c] == 0) {
+				ASCII[c] = OTHER_ASCII;
+			}
+		}
+		NON_ASCII = 1L << bit;
+	}
+
+	private CharMask() {
+	}
+
+	/**
+	 * @return the mask bit standing for c
+	 */
+	public static long bit(char c) {
+		return c < 128 ? ASCII[c] : NON_ASCII;
+	}
+}
@@ -13,6 +13,9 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 
@@ -64,6 +67,8 @@ public class DisplayableBinaryTree extends JComponent {
 	private int width;
 	private int height;
 	private EditTree tree;
+	// one wrapper per node, rebuilt on every paint so removed nodes don't linger
+	private Map<Node, DisplayableNodeWrapper> wrappers = new IdentityHashMap<>();
 	private JFrame frame;
 	private double xDistance;
 	private double circleRadius;
@@ -204,7 +209,8 @@ public class DisplayableBinaryTree extends JComponent {
 		g2.fill(new Rectangle2D.Double(this.width - 20, 80, 40, 5));
 		g2.fill(new Rectangle2D.Double(this.width - 25, 90, 50, 5));
 		// // RAISE THE BAR ^^^^^
-		DisplayableNodeWrapper current = this.tree.root.displayableNodeWrapper;
+		this.wrappers.clear();
+		DisplayableNodeWrapper current = DisplayableNodeWrapper.of(this.tree.root, this.wrappers);
 		// CURRENT.POINT = THE CENTER POINT, NOT THE UPPER LEFT CORNER
 		this.paintHelper(g2, current, this.nodeY);
 		this.lineHelper(g2, current);
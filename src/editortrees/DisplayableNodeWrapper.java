@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Map;
 
 /*
  * REQUIRES:
@@ -22,6 +23,8 @@ public class DisplayableNodeWrapper {
 	private Point.Double point;
 	private double radius;
 	private Node node;
+	// every wrapper of the displayed tree, by node; nodes don't point back at them
+	private Map<Node, DisplayableNodeWrapper> wrappers;
 
 	// ******************************************************************************
 
@@ -29,11 +32,30 @@ public class DisplayableNodeWrapper {
 	 * only sets the graphical related fields
 	 * 
 	 * @param node
+	 * @param wrappers
+	 *            the wrappers of the rest of the tree, shared by all of them
 	 */
-	public DisplayableNodeWrapper(Node node) {
+	public DisplayableNodeWrapper(Node node, Map<Node, DisplayableNodeWrapper> wrappers) {
 		this.point = null;
 		this.radius = -10;
 		this.node = node;
+		this.wrappers = wrappers;
+	}
+
+	/**
+	 * gets the wrapper for node, making it the first time it's asked for
+	 * 
+	 * @param node
+	 * @param wrappers
+	 * @return
+	 */
+	public static DisplayableNodeWrapper of(Node node, Map<Node, DisplayableNodeWrapper> wrappers) {
+		DisplayableNodeWrapper wrapper = wrappers.get(node);
+		if (wrapper == null) {
+			wrapper = new DisplayableNodeWrapper(node, wrappers);
+			wrappers.put(node, wrapper);
+		}
+		return wrapper;
 	}
 
 	/**
@@ -42,7 +64,7 @@ public class DisplayableNodeWrapper {
 	 */
 	public DisplayableNodeWrapper getLeft() {
 		if (this.node.left != Node.NULL_NODE) {
-			return this.node.left.displayableNodeWrapper;
+			return of(this.node.left, this.wrappers);
 		}
 		return null;
 	}
@@ -53,7 +75,7 @@ public class DisplayableNodeWrapper {
 	 */
 	public DisplayableNodeWrapper getRight() {
 		if (this.node.right != Node.NULL_NODE) {
-			return this.node.right.displayableNodeWrapper;
+			return of(this.node.right, this.wrappers);
 		}
 		return null;
 	}
@@ -63,7 +85,7 @@ public class DisplayableNodeWrapper {
 	 * @return
 	 */
 	public DisplayableNodeWrapper getParent() {
-		return this.node.getParent().displayableNodeWrapper;
+		return of(this.node.getParent(), this.wrappers);
 	}
 	
 	public Node getNode() {
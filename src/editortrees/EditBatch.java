@@ -0,0 +1,111 @@
+package editortrees;
+
+import java.util.Arrays;
+
+/**
+ * Edits to be made to an EditTree together, e.g. what one keystroke does at
+ * every cursor. Each edit deletes some characters at a position and inserts
+ * text there, with positions as they are in the tree before any of the edits,
+ * so nothing has to be shifted by hand. Apply the batch with
+ * EditTree.applyBatch(); a batch can be cleared and reused for the next one.
+ *
+ * The edits may be added in any order, but their deleted ranges must not
+ * overlap. Insertions at the same position go in in the order they were
+ * added, before anything deleted there.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class EditBatch {
+
+	private int[] positions = new int[8];
+	private int[] deletes = new int[8];
+	private CharSequence[] inserts = new CharSequence[8];
+	private int count;
+
+	/**
+	 * Adds one edit.
+	 *
+	 * @param pos    where the edit starts, in the tree before the batch
+	 * @param delete how many characters to delete from pos
+	 * @param insert what to insert at pos; kept, not copied, until the batch
+	 *               is applied
+	 * @throws IllegalArgumentException if pos or delete is negative
+	 */
+	public void add(int pos, int delete, CharSequence insert) {
+		if (pos < 0 || delete < 0) {
+			throw new IllegalArgumentException("bad edit: " + pos + ", " + delete);
+		}
+		if (this.count == this.positions.length) {
+			this.positions = Arrays.copyOf(this.positions, this.count * 2);
+			this.deletes = Arrays.copyOf(this.deletes, this.count * 2);
+			this.inserts = Arrays.copyOf(this.inserts, this.count * 2);
+		}
+		this.positions[this.count] = pos;
+		this.deletes[this.count] = delete;
+		this.inserts[this.count] = insert;
+		this.count++;
+	}
+
+	/**
+	 * Adds an edit that only inserts.
+	 */
+	public void insert(int pos, CharSequence text) {
+		this.add(pos, 0, text);
+	}
+
+	/**
+	 * Adds an edit that only deletes.
+	 */
+	public void delete(int pos, int length) {
+		this.add(pos, length, "");
+	}
+
+	/**
+	 * @return the number of edits added
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Removes every edit, so the batch can be filled again.
+	 */
+	public void clear() {
+		Arrays.fill(this.inserts, 0, this.count, null);
+		this.count = 0;
+	}
+
+	// Copies the edits into starts, ends and texts in order of position, ties
+	// in the order they were added but with a deleting edit last, and returns
+	// how many there are.
+	int sortInto(int[] starts, int[] ends, CharSequence[] texts) {
+		int[] order = null;
+		for (int i = 1; i < this.count; i++) {
+			if (this.key(i) < this.key(i - 1)) {
+				long[] keys = new long[this.count];
+				for (int j = 0; j < this.count; j++) {
+					keys[j] = this.key(j);
+				}
+				Arrays.sort(keys);
+				order = new int[this.count];
+				for (int j = 0; j < this.count; j++) {
+					order[j] = (int) (keys[j] & Integer.MAX_VALUE);
+				}
+				break;
+			}
+		}
+		for (int i = 0; i < this.count; i++) {
+			int j = order == null ? i : order[i];
+			starts[i] = this.positions[j];
+			ends[i] = this.positions[j] + this.deletes[j];
+			texts[i] = this.inserts[j];
+		}
+		return this.count;
+	}
+
+	// Orders edits by position, then insertions before a deletion, then by
+	// index, so sorting the keys keeps ties stable.
+	private long key(int i) {
+		return (long) this.positions[i] << 32 | (this.deletes[i] > 0 ? 1L << 31 : 0) | i;
+	}
+}
@@ -0,0 +1,419 @@
+package editortrees;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the edits made to an EditTree, so a crash loses at most
+ * the last uncommitted group of edits instead of everything since the last
+ * full save. Attach it with tree.addEditListener(journal).
+ * 
+ * Edits are encoded as small binary records and collected in a direct buffer.
+ * Every groupSize records (or when the buffer fills, or on commit()) the
+ * collected records are written as one frame and forced to disk, so many edits
+ * share a single force(). Each frame is the length of its records, a CRC32,
+ * the journal's generation, then the records; the CRC covers everything but
+ * itself, which lets recovery drop a frame that was torn by a crash.
+ * 
+ * An edit whose records don't fit in one frame, such as a batch or a long
+ * replacement, goes on in the next: the top bit of the length marks a frame
+ * that is continued. Recovery only replays such frames once the frame that
+ * finishes them has been read, so it replays all of the edit or none of it.
+ * 
+ * Recovery loads the last snapshot and replays the journal onto it, see
+ * recover(). checkpoint() writes a new snapshot and empties the journal. Each
+ * checkpoint starts a new generation, which the snapshot records too, so
+ * frames older than the snapshot are recognised and skipped even if a crash
+ * came before the journal was emptied.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class EditJournal implements EditListener, Closeable {
+
+	static final byte INSERT = 1; // pos, char
+	static final byte DELETE = 2; // pos, length
+	static final byte REPLACE = 3; // pos, length, text length, text
+
+	private static final int FRAME_HEADER = 12;
+	private static final int CONTINUED = 1 << 31; // in the length of a frame
+	private static final int MAX_RECORD = 9; // but a REPLACE can take a whole frame
+	private static final int BUFFER_BYTES = 1 << 16;
+	// longest text a REPLACE record can carry and still fit in a frame
+	static final int MAX_TEXT = (BUFFER_BYTES - FRAME_HEADER - 13) / 2;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final int groupSize;
+	private final ByteBuffer frame = ByteBuffer.allocateDirect(BUFFER_BYTES);
+	private final CRC32 crc = new CRC32();
+	private int pending; // edits since the last commit, toward groupSize
+	private int generation; // of the snapshot the frames apply to
+	private int unfinished; // edits begun whose records aren't all collected yet
+
+	/**
+	 * Opens or creates a journal. Anything after the last complete frame, left
+	 * by a crash in the middle of a write, is cut off so new frames follow valid
+	 * ones. New frames continue the generation of the last one. Recover or
+	 * replay the journal before attaching it to a tree.
+	 * 
+	 * @param file      journal file
+	 * @param groupSize records to collect before writing and forcing them
+	 * @throws IOException
+	 */
+	public EditJournal(Path file, int groupSize) throws IOException {
+		if (groupSize < 1) {
+			throw new IllegalArgumentException("groupSize must be positive");
+		}
+		this.file = file;
+		this.groupSize = groupSize;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		Replay frames = new Replay(null, 0);
+		long valid = scan(this.channel, frames);
+		this.generation = frames.generation;
+		this.channel.truncate(valid);
+		this.channel.position(valid);
+		this.frame.position(FRAME_HEADER);
+	}
+
+	@Override
+	public void inserted(int pos, char ch) {
+		room(MAX_RECORD);
+		this.frame.put(INSERT).putInt(pos).putChar(ch);
+		recorded();
+	}
+
+	@Override
+	public void deleted(int pos, int length) {
+		room(MAX_RECORD);
+		this.frame.put(DELETE).putInt(pos).putInt(length);
+		recorded();
+	}
+
+	// A bulk insertion is a replacement of nothing, so it goes in as REPLACE
+	// records rather than one INSERT per character.
+	@Override
+	public void inserted(int pos, CharSequence text) {
+		putText(pos, 0, text);
+		recorded();
+	}
+
+	// One record, so recovery replays either all of a replacement or none of it,
+	// unless text is longer than a frame can hold.
+	@Override
+	public void replaced(int pos, int length, CharSequence text) {
+		putText(pos, length, text);
+		recorded();
+	}
+
+	// Writes the replacement of length characters at pos by text as REPLACE
+	// records, one per MAX_TEXT characters of text. The first replaces the
+	// range and each of the others inserts its part after the one before.
+	private void putText(int pos, int length, CharSequence text) {
+		this.unfinished++;
+		int from = 0;
+		do {
+			int to = Math.min(text.length(), from + MAX_TEXT);
+			room(13 + 2 * (to - from));
+			this.frame.put(REPLACE).putInt(pos + from).putInt(from == 0 ? length : 0).putInt(to - from);
+			for (int i = from; i < to; i++) {
+				this.frame.putChar(text.charAt(i));
+			}
+			from = to;
+		} while (from < text.length());
+		this.unfinished--;
+	}
+
+	// A batch's records are kept together like those of one long replacement,
+	// and the group is only committed once the whole batch is in.
+	@Override
+	public void batchStarted() {
+		this.unfinished++;
+	}
+
+	@Override
+	public void batchFinished() {
+		this.unfinished--;
+		if (this.unfinished == 0 && this.pending >= this.groupSize) {
+			commitUnchecked();
+		}
+	}
+
+	// A full frame in the middle of an edit is written as continued.
+	private void room(int bytes) {
+		if (this.frame.remaining() < bytes) {
+			writeUnchecked(this.unfinished > 0);
+		}
+	}
+
+	private void recorded() {
+		if (++this.pending >= this.groupSize && this.unfinished == 0) {
+			commitUnchecked();
+		}
+	}
+
+	// listeners can't throw IOException
+	private void commitUnchecked() {
+		writeUnchecked(false);
+		this.pending = 0;
+	}
+
+	private void writeUnchecked(boolean continued) {
+		try {
+			write(continued);
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not write edit journal " + this.file, e);
+		}
+	}
+
+	/**
+	 * Writes the collected records as one frame and forces them to disk. Once
+	 * this returns, every edit reported so far survives a crash.
+	 * 
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		write(false);
+		this.pending = 0;
+	}
+
+	// Writes the collected records, if any, as one frame and forces it.
+	private void write(boolean continued) throws IOException {
+		if (this.frame.position() == FRAME_HEADER) {
+			return;
+		}
+		int length = this.frame.position() - FRAME_HEADER;
+		seal(this.frame, continued ? length | CONTINUED : length, this.generation, this.crc);
+		this.frame.flip();
+		while (this.frame.hasRemaining()) {
+			this.channel.write(this.frame);
+		}
+		this.channel.force(false);
+		this.frame.clear();
+		this.frame.position(FRAME_HEADER);
+	}
+
+	// Fills in the header of a frame whose records follow it in buffer; word is
+	// the length of the records, with CONTINUED if the frame is continued.
+	private static void seal(ByteBuffer buffer, int word, int generation, CRC32 crc) {
+		buffer.putInt(0, word);
+		buffer.putInt(8, generation);
+		ByteBuffer covered = buffer.duplicate();
+		covered.position(0);
+		covered.limit(4);
+		crc.reset();
+		crc.update(covered);
+		covered.limit(FRAME_HEADER + (word & ~CONTINUED));
+		covered.position(8);
+		crc.update(covered);
+		buffer.putInt(4, (int) crc.getValue());
+	}
+
+	/**
+	 * Saves tree as the new recovery base and empties the journal. The snapshot
+	 * is written with the next generation by EditTreeSnapshot.write(), which
+	 * moves it into place whole. From then on recovery skips the journal's
+	 * existing frames, which are a generation older, so a crash leaves either
+	 * the old snapshot and journal or the new snapshot with nothing replayed
+	 * onto it, even if the journal wasn't emptied yet.
+	 * 
+	 * @param tree     the tree this journal is attached to
+	 * @param snapshot where recover() will look for the snapshot
+	 * @throws IOException
+	 */
+	public void checkpoint(EditTree tree, Path snapshot) throws IOException {
+		commit();
+		int next = this.generation + 1;
+		EditTreeSnapshot.write(tree, snapshot, next);
+		restart(this.channel, next);
+		this.generation = next;
+	}
+
+	// Empties the journal down to one frame without records, which carries the
+	// generation so a journal reopened before any new edits still knows it.
+	private static void restart(FileChannel channel, int generation) throws IOException {
+		ByteBuffer marker = ByteBuffer.allocate(FRAME_HEADER);
+		seal(marker, 0, generation, new CRC32());
+		channel.truncate(0);
+		while (marker.hasRemaining()) {
+			channel.write(marker, marker.position());
+		}
+		channel.position(FRAME_HEADER);
+		channel.force(true);
+	}
+
+	/**
+	 * Commits anything pending and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			commit();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Loads the snapshot (or starts empty if there isn't one yet) and replays
+	 * the journal frames written since it onto it. If a crash interrupted a
+	 * checkpoint after the snapshot was moved into place, the journal is
+	 * emptied here as checkpoint() would have done.
+	 * 
+	 * @return the recovered tree
+	 * @throws IOException
+	 */
+	public static EditTree recover(Path snapshot, Path journal) throws IOException {
+		EditTree tree = new EditTree();
+		int generation = 0;
+		if (Files.exists(snapshot)) {
+			tree = EditTreeSnapshot.read(snapshot);
+			generation = EditTreeSnapshot.generation(snapshot);
+		}
+		FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			Replay replay = new Replay(tree, generation);
+			scan(channel, replay);
+			if (replay.generation < generation) {
+				restart(channel, generation);
+			}
+		} finally {
+			channel.close();
+		}
+		return tree;
+	}
+
+	/**
+	 * Applies every complete frame of the journal to tree, whatever its
+	 * generation, stopping at the first torn or corrupt frame. Continued frames
+	 * without the frame that finishes them are left out.
+	 * 
+	 * @return number of edits applied
+	 * @throws IOException
+	 */
+	public static int replay(Path journal, EditTree tree) throws IOException {
+		if (!Files.exists(journal)) {
+			return 0;
+		}
+		FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ);
+		try {
+			Replay replay = new Replay(tree, 0);
+			scan(channel, replay);
+			return replay.applied;
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Applies the records of each good frame from generation oldest on to a
+	// tree, if there is one, and notes the generation of the last frame.
+	// Continued frames are held back until the frame that finishes them.
+	private static class Replay {
+		final EditTree tree;
+		final int oldest;
+		final List<ByteBuffer> held = new ArrayList<>();
+		int applied;
+		int generation;
+
+		Replay(EditTree tree, int oldest) {
+			this.tree = tree;
+			this.oldest = oldest;
+		}
+
+		// Returns whether the frame finished the edits it has records of.
+		boolean frame(int generation, ByteBuffer records, boolean continued) throws IOException {
+			this.generation = generation;
+			if (this.tree == null || generation < this.oldest) {
+				return !continued;
+			}
+			this.held.add(records);
+			if (continued) {
+				return false;
+			}
+			for (ByteBuffer frame : this.held) {
+				apply(frame);
+			}
+			this.held.clear();
+			return true;
+		}
+
+		private void apply(ByteBuffer records) throws IOException {
+			while (records.hasRemaining()) {
+				byte op = records.get();
+				if (op == INSERT) {
+					int pos = records.getInt();
+					char ch = records.getChar();
+					this.tree.add(ch, pos);
+				} else if (op == DELETE) {
+					int pos = records.getInt();
+					int length = records.getInt();
+					this.tree.replace(pos, length, "");
+				} else if (op == REPLACE) {
+					int pos = records.getInt();
+					int length = records.getInt();
+					char[] text = new char[records.getInt()];
+					for (int i = 0; i < text.length; i++) {
+						text[i] = records.getChar();
+					}
+					this.tree.replace(pos, length, CharBuffer.wrap(text));
+				} else {
+					throw new IOException("unknown journal record " + op);
+				}
+				this.applied++;
+			}
+		}
+	}
+
+	// Walks the frames from the start, handing each good one to replay, and
+	// returns the offset just past the last good frame that wasn't continued.
+	private static long scan(FileChannel channel, Replay replay) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+		CRC32 crc = new CRC32();
+		long offset = 0;
+		long finished = 0;
+		long size = channel.size();
+		while (offset + FRAME_HEADER <= size) {
+			header.clear();
+			readFully(channel, header, offset);
+			int word = header.getInt(0);
+			int length = word & ~CONTINUED;
+			if (length > BUFFER_BYTES - FRAME_HEADER || offset + FRAME_HEADER + length > size) {
+				break;
+			}
+			ByteBuffer records = ByteBuffer.allocate(length);
+			readFully(channel, records, offset + FRAME_HEADER);
+			records.flip();
+			crc.reset();
+			crc.update(header.array(), 0, 4);
+			crc.update(header.array(), 8, 4);
+			crc.update(records.duplicate());
+			if ((int) crc.getValue() != header.getInt(4)) {
+				break;
+			}
+			offset += FRAME_HEADER + length;
+			if (replay.frame(header.getInt(8), records, word < 0)) {
+				finished = offset;
+			}
+		}
+		return finished;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("journal ended early");
+			}
+		}
+	}
+}
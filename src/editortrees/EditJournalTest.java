@@ -0,0 +1,263 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the write-ahead edit journal and recovery.
+ */
+public class EditJournalTest {
+
+	private Path dir;
+	private Path journal;
+	private Path snapshot;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("journal");
+		this.journal = this.dir.resolve("edits.wal");
+		this.snapshot = this.dir.resolve("doc.ets");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path p : new Path[] { this.journal, this.snapshot }) {
+			Files.deleteIfExists(p);
+		}
+		Files.delete(this.dir);
+	}
+
+	private static void randomEdits(EditTree t, int count, Random random) {
+		for (int i = 0; i < count; i++) {
+			if (t.size() > 0 && random.nextInt(3) == 0) {
+				t.delete(random.nextInt(t.size()));
+			} else {
+				t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+			}
+		}
+	}
+
+	@Test
+	public void testReplayReproducesEdits() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 100);
+		t.addEditListener(j);
+		randomEdits(t, 5000, new Random(1));
+		j.close();
+		EditTree recovered = EditJournal.recover(this.snapshot, this.journal);
+		assertEquals(t.toString(), recovered.toString());
+	}
+
+	@Test
+	public void testUncommittedGroupIsLost() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 10);
+		t.addEditListener(j);
+		for (int i = 0; i < 25; i++) {
+			t.add('x');
+		}
+		// no close(): simulate a crash with five edits still in the buffer
+		EditTree recovered = new EditTree();
+		assertEquals(20, EditJournal.replay(this.journal, recovered));
+		assertEquals(20, recovered.size());
+		j.commit();
+		recovered = new EditTree();
+		assertEquals(25, EditJournal.replay(this.journal, recovered));
+	}
+
+	@Test
+	public void testCheckpointThenRecover() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 64);
+		t.addEditListener(j);
+		Random random = new Random(2);
+		randomEdits(t, 2000, random);
+		j.checkpoint(t, this.snapshot);
+		assertEquals(0, EditJournal.replay(this.journal, new EditTree()));
+		randomEdits(t, 500, random);
+		j.close();
+		EditTree recovered = EditJournal.recover(this.snapshot, this.journal);
+		assertEquals(t.toString(), recovered.toString());
+	}
+
+	@Test
+	public void testCrashBeforeTheJournalIsEmptied() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 16);
+		t.addEditListener(j);
+		Random random = new Random(3);
+		randomEdits(t, 1000, random);
+		j.commit();
+		byte[] beforeCheckpoint = Files.readAllBytes(this.journal);
+		j.checkpoint(t, this.snapshot);
+		j.close();
+		// the snapshot was moved into place but the old journal is still there
+		Files.write(this.journal, beforeCheckpoint);
+		EditTree recovered = EditJournal.recover(this.snapshot, this.journal);
+		assertEquals(t.toString(), recovered.toString());
+
+		// recovery emptied the journal, so edits made after it replay too
+		j = new EditJournal(this.journal, 16);
+		recovered.addEditListener(j);
+		randomEdits(recovered, 300, random);
+		j.close();
+		assertEquals(recovered.toString(), EditJournal.recover(this.snapshot, this.journal).toString());
+	}
+
+	@Test
+	public void testGenerationSurvivesReopening() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 8);
+		t.addEditListener(j);
+		Random random = new Random(4);
+		randomEdits(t, 200, random);
+		j.checkpoint(t, this.snapshot);
+		j.close();
+		t.removeEditListener(j);
+		// a journal reopened with no frames since the checkpoint still writes
+		// frames that recovery takes as newer than the snapshot
+		j = new EditJournal(this.journal, 8);
+		t.addEditListener(j);
+		randomEdits(t, 200, random);
+		j.close();
+		assertEquals(t.toString(), EditJournal.recover(this.snapshot, this.journal).toString());
+	}
+
+	@Test
+	public void testReplaceIsOneRecord() throws IOException {
+		EditTree t = new EditTree("hello world");
+		EditJournal j = new EditJournal(this.journal, 100);
+		t.addEditListener(j);
+		t.replace(6, 5, "there");
+		t.replace(0, 0, ">> ");
+		t.replace(t.size() - 1, 1, "");
+		j.close();
+		EditTree recovered = new EditTree("hello world");
+		assertEquals(3, EditJournal.replay(this.journal, recovered));
+		assertEquals(">> hello ther", recovered.toString());
+	}
+
+	@Test
+	public void testDeleteRecordIsOneRangeDeletion() throws IOException {
+		EditJournal j = new EditJournal(this.journal, 100);
+		j.inserted(0, "abcdefgh");
+		j.deleted(2, 4);
+		j.close();
+		EditTree recovered = new EditTree();
+		assertEquals(2, EditJournal.replay(this.journal, recovered));
+		assertEquals("abgh", recovered.toString());
+	}
+
+	@Test
+	public void testReplaceLongerThanAFrame() throws IOException {
+		EditTree t = new EditTree("ab");
+		EditJournal j = new EditJournal(this.journal, 100);
+		t.addEditListener(j);
+		char[] text = new char[40000];
+		Arrays.fill(text, 'x');
+		text[0] = 'y';
+		text[EditJournal.MAX_TEXT] = 'z';
+		t.replace(1, 1, new String(text));
+		j.close();
+		EditTree recovered = new EditTree("ab");
+		// split in two, not one record per character
+		assertEquals(2, EditJournal.replay(this.journal, recovered));
+		assertEquals(t.toString(), recovered.toString());
+	}
+
+	@Test
+	public void testAppendIsRecordedInBulk() throws IOException {
+		EditTree t = new EditTree("start ");
+		EditJournal j = new EditJournal(this.journal, 2);
+		t.addEditListener(j);
+		StringBuilder sb = new StringBuilder();
+		Random random = new Random(5);
+		for (int i = 0; i < 100000; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		t.append(sb);
+		t.append("!");
+		// the second append completes the group of two edits
+		EditTree recovered = new EditTree("start ");
+		int pieces = (100000 + EditJournal.MAX_TEXT - 1) / EditJournal.MAX_TEXT;
+		assertEquals(pieces + 1, EditJournal.replay(this.journal, recovered));
+		assertEquals(t.toString(), recovered.toString());
+		assertTrue(Files.size(this.journal) < 3 * 100000);
+		j.close();
+	}
+
+	@Test
+	public void testTornBatchIsReplayedWholeOrNotAtAll() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 1);
+		t.addEditListener(j);
+		t.append("0123456789");
+		String beforeBatch = t.toString();
+		long committed = Files.size(this.journal);
+		EditBatch batch = new EditBatch();
+		for (int i = 0; i < 3; i++) {
+			char[] text = new char[20000];
+			Arrays.fill(text, (char) ('a' + i));
+			batch.add(3 * i, 1, new String(text));
+		}
+		t.applyBatch(batch);
+		j.close();
+		// the batch is too big for one frame
+		long size = Files.size(this.journal);
+		assertTrue(size - committed > 2 * 20000 * 2);
+		EditTree whole = new EditTree();
+		EditJournal.replay(this.journal, whole);
+		assertEquals(t.toString(), whole.toString());
+
+		// tear the batch's last frame: the frames before it are left out too
+		FileChannel channel = FileChannel.open(this.journal, StandardOpenOption.WRITE);
+		channel.truncate(size - 10);
+		channel.close();
+		EditTree recovered = EditJournal.recover(this.snapshot, this.journal);
+		assertEquals(beforeBatch, recovered.toString());
+
+		// reopening cuts the unfinished batch, so new frames follow the append
+		j = new EditJournal(this.journal, 1);
+		recovered.addEditListener(j);
+		recovered.add('z');
+		j.close();
+		assertEquals(beforeBatch + "z", EditJournal.recover(this.snapshot, this.journal).toString());
+	}
+
+	@Test
+	public void testTornFrameIsDroppedAndOverwritten() throws IOException {
+		EditTree t = new EditTree();
+		EditJournal j = new EditJournal(this.journal, 4);
+		t.addEditListener(j);
+		for (int i = 0; i < 8; i++) {
+			t.add((char) ('a' + i));
+		}
+		j.close();
+		// chop the second frame in half
+		FileChannel channel = FileChannel.open(this.journal, StandardOpenOption.WRITE);
+		channel.truncate(channel.size() - 10);
+		channel.close();
+
+		EditTree recovered = EditJournal.recover(this.snapshot, this.journal);
+		assertEquals("abcd", recovered.toString());
+
+		// reopening cuts the torn frame so new frames are readable after it
+		j = new EditJournal(this.journal, 1);
+		recovered.addEditListener(j);
+		recovered.add('z');
+		j.close();
+		assertEquals("abcdz", EditJournal.recover(this.snapshot, this.journal).toString());
+	}
+}
@@ -0,0 +1,61 @@
+package editortrees;
+
+/**
+ * Told about every change to an EditTree it is attached to, after the change
+ * has been made. Positions are in the tree as it was just before the change.
+ * Listeners run on the thread making the edit, so they should be quick.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public interface EditListener {
+
+	/**
+	 * ch was added at pos.
+	 */
+	void inserted(int pos, char ch);
+
+	/**
+	 * text was added at pos in one go, e.g. by EditTree.append(). Reported as
+	 * one inserted() per character unless overridden. text may be reused by the
+	 * caller afterwards, so copy it to keep it.
+	 */
+	default void inserted(int pos, CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			this.inserted(pos + i, text.charAt(i));
+		}
+	}
+
+	/**
+	 * length characters starting at pos were deleted.
+	 */
+	void deleted(int pos, int length);
+
+	/**
+	 * length characters starting at pos were replaced by text in one edit, e.g.
+	 * by EditTree.replace(). Reported as deleted() then inserted() unless
+	 * overridden. text may be reused by the caller afterwards, so copy it to
+	 * keep it.
+	 */
+	default void replaced(int pos, int length, CharSequence text) {
+		if (length > 0) {
+			this.deleted(pos, length);
+		}
+		if (text.length() > 0) {
+			this.inserted(pos, text);
+		}
+	}
+
+	/**
+	 * The replaced() calls from here to batchFinished() are the parts of one
+	 * change, e.g. EditTree.applyBatch() or replaceAll(), for listeners that
+	 * need to keep them together. Nothing unless overridden.
+	 */
+	default void batchStarted() {
+	}
+
+	/**
+	 * The change begun by batchStarted() has been reported in full.
+	 */
+	default void batchFinished() {
+	}
+}
@@ -1,5 +1,16 @@
 package editortrees;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * A height-balanced binary tree with rank that could be the basis for a text
  * editor.
@@ -17,6 +28,28 @@ public class EditTree {
 	private int size;
 	private DisplayableBinaryTree display;
 	private RotationTracker RotationCount;
+	// Sampled debug checks: every pathCheckInterval-th edit re-verifies the path
+	// it touched. 0 turns them off.
+	private int pathCheckInterval;
+	private int editsUntilPathCheck;
+	// null until enableStatistics(), so the hot paths only pay a null check
+	private EditTreeStats stats;
+	// the counters disableStatistics() turned off, which enabling continues
+	private EditTreeStats disabledStats;
+	// copied on change so the edit paths can loop over it without locking
+	private EditListener[] listeners = NO_LISTENERS;
+	private static final EditListener[] NO_LISTENERS = new EditListener[0];
+	// cached path for appends; cleared by every edit that isn't one
+	private final RightSpine spine = new RightSpine();
+
+	// false makes appends walk down from the root like any other add; only for
+	// benchmarking the cache
+	boolean appendFastPath = true;
+	// characters readFrom() builds into one subtree before joining it on
+	static final int READ_CHUNK = 1 << 13;
+	// replaceAll() and applyBatch() edit the tree in place when the edits times
+	// this is less than the size, and rebuild it otherwise
+	static final int SPLICE_COST = 10;
 
 	/**
 	 * MILESTONE 1 Construct an empty tree
@@ -27,6 +60,14 @@ public class EditTree {
 		this.RotationCount = new RotationTracker();
 	}
 
+	// Wraps nodes that were put together elsewhere, e.g. loaded from a snapshot.
+	EditTree(Node root, int size, int rotationCount) {
+		this.root = root;
+		this.size = size;
+		this.RotationCount = new RotationTracker();
+		this.RotationCount.count = rotationCount;
+	}
+
 	/**
 	 * MILESTONE 1 Construct a single-node tree whose element is ch
 	 * 
@@ -46,11 +87,16 @@ public class EditTree {
 	 * @param e
 	 */
 	public EditTree(EditTree e) {
+		EditTreeEvent event = EditTreeEvent.start();
 		this.root = Node.NULL_NODE;
+		this.RotationCount = new RotationTracker();
+		this.RotationCount.brackets = e.RotationCount.brackets; // same kind of nodes
 		if (e.size > 0) {
 			this.root = CloneEditTree(e.root);
 		}
-		this.RotationCount = new RotationTracker();
+		if (event != null && event.shouldCommit()) {
+			event.record("copy", this.size, -1, 0, 0);
+		}
 	}
 
 	private Node CloneEditTree(Node root) {
@@ -58,11 +104,12 @@ public class EditTree {
 			return Node.NULL_NODE;
 		}
 		this.size++;
-		Node n = new Node(root.data);
+		Node n = Node.leaf(root.data, this.RotationCount.brackets);
 		n.rank = root.rank;
 		n.balance = root.balance;
 		n.left = CloneEditTree(root.left);
 		n.right = CloneEditTree(root.right);
+		n.updateSummary();
 		return n;
 	}
 
@@ -74,10 +121,125 @@ public class EditTree {
 	 * @param s
 	 */
 	public EditTree(String s) {
-		this.root = Node.NULL_NODE;
-		this.root = this.root.CreateEditTree(s);
+		this((CharSequence) s);
+	}
+
+	/**
+	 * Create a balanced EditTree whose toString is s. Large inputs build their left
+	 * and right halves in parallel on the common fork-join pool; the result has the
+	 * same shape and balance codes as a sequential build.
+	 * 
+	 * @param s
+	 */
+	public EditTree(CharSequence s) {
+		this(s, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a balanced EditTree whose toString is the contents of chars.
+	 * 
+	 * @param chars
+	 */
+	public EditTree(char[] chars) {
+		this(CharBuffer.wrap(chars));
+	}
+
+	/**
+	 * Same as EditTree(CharSequence), but runs the parallel build on the given pool.
+	 * 
+	 * @param s
+	 * @param pool pool used when s is too long to build on one thread
+	 */
+	public EditTree(CharSequence s, ForkJoinPool pool) {
+		this(s, pool, null);
+	}
+
+	/**
+	 * Same as EditTree(CharSequence), with search summaries for brackets
+	 * already enabled, as enableSummaries() would, but without building twice.
+	 * 
+	 * @param s
+	 * @param brackets pairs for matchingBracket()
+	 */
+	public EditTree(CharSequence s, Brackets brackets) {
+		this(s, ForkJoinPool.commonPool(), checkBrackets(brackets));
+	}
+
+	private EditTree(CharSequence s, ForkJoinPool pool, Brackets brackets) {
+		EditTreeEvent event = EditTreeEvent.start();
+		if (s.length() > ParallelTreeBuilder.SEQUENTIAL_CUTOFF) {
+			this.root = ParallelTreeBuilder.build(pool, s, 0, s.length(), brackets);
+		} else {
+			this.root = Node.buildBalanced(s, 0, s.length(), brackets);
+		}
 		this.size = s.length();
 		this.RotationCount = new RotationTracker();
+		this.RotationCount.brackets = brackets;
+		if (event != null && event.shouldCommit()) {
+			event.record("build", this.size, -1, 0, 0);
+		}
+	}
+
+	/**
+	 * Builds a balanced tree from everything in, without holding the whole text
+	 * in memory at once. Each chunk read is built into a balanced subtree and
+	 * joined onto the right of the tree so far, so the only extra memory is the
+	 * chunk buffer and an O(log n) join path.
+	 *
+	 * @param in source of the text; read to the end but not closed
+	 * @return a tree whose toString is the text read
+	 * @throws IOException if in fails
+	 * @throws IllegalStateException if in holds more than Integer.MAX_VALUE
+	 *                               characters
+	 */
+	public static EditTree readFrom(Reader in) throws IOException {
+		EditTreeEvent event = EditTreeEvent.start();
+		char[] chunk = new char[READ_CHUNK];
+		Node root = Node.NULL_NODE;
+		int size = 0;
+		RotationTracker joins = new RotationTracker();
+		int length;
+		while ((length = fill(in, chunk)) > 0) {
+			if (length > Integer.MAX_VALUE - size) {
+				throw new IllegalStateException("input is longer than an EditTree can hold");
+			}
+			// the chunk's first character is the node the join hangs the rest on
+			Node mid = new Node(chunk[0]);
+			Node rest = Node.buildBalanced(CharBuffer.wrap(chunk), 1, length, null);
+			root = Node.join(root, size, mid, rest, joins);
+			size += length;
+		}
+		EditTree tree = new EditTree(root, size, 0);
+		if (event != null && event.shouldCommit()) {
+			event.record("build", size, -1, 0, 0);
+		}
+		return tree;
+	}
+
+	/**
+	 * Same as readFrom(Reader), decoding the bytes of in with charset.
+	 *
+	 * @param in      source of the encoded text; read to the end but not closed
+	 * @param charset encoding of in
+	 * @return a tree whose toString is the decoded text
+	 * @throws IOException if in fails
+	 */
+	public static EditTree readFrom(InputStream in, Charset charset) throws IOException {
+		return readFrom(new InputStreamReader(in, charset));
+	}
+
+	// Reads until chunk is full or in runs out, so every chunk but the last is
+	// the same size. Returns the number of characters read.
+	private static int fill(Reader in, char[] chunk) throws IOException {
+		int length = 0;
+		while (length < chunk.length) {
+			int read = in.read(chunk, length, chunk.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
 	}
 
 	/**
@@ -85,11 +247,39 @@ public class EditTree {
 	 */
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		if (this.root != Node.NULL_NODE) {
-			this.root.toString(sb);
+		return new String(this.toCharArray());
+	}
+
+	/**
+	 * Copies the characters of this tree, in order, into a new array. Large trees
+	 * are written in parallel on the common fork-join pool.
+	 * 
+	 * @return the in-order characters of this tree
+	 */
+	public char[] toCharArray() {
+		return this.toCharArray(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Same as toCharArray(), but runs the parallel write on the given pool. Each
+	 * subtree's place in the output is known from the ranks, so independent
+	 * subtrees fill their own part of the array concurrently.
+	 * 
+	 * @param pool pool used when the tree is too large to write on one thread
+	 * @return the in-order characters of this tree
+	 */
+	public char[] toCharArray(ForkJoinPool pool) {
+		EditTreeEvent event = EditTreeEvent.start();
+		char[] out = new char[this.size];
+		if (this.size > SubtreeWriter.SEQUENTIAL_CUTOFF) {
+			pool.invoke(new SubtreeWriter(this.root, out, 0, this.size));
+		} else {
+			this.root.toCharArray(out, 0);
+		}
+		if (event != null && event.shouldCommit()) {
+			event.record("toString", this.size, -1, 0, 0);
 		}
-		return sb.toString();
+		return out;
 	}
 
 	/**
@@ -137,9 +327,339 @@ public class EditTree {
 		if (pos < 0 || pos > size) {
 			throw new IndexOutOfBoundsException();
 		}
-		this.root = this.root.addHelp(ch, pos, this.RotationCount);
+		EditTreeEvent event = EditTreeEvent.start();
+		int depth = this.RotationCount.depth;
+		int rotations = this.RotationCount.count;
+		this.root = this.insert(ch, pos);
 		size++;
 		this.RotationCount.keepRotating = true;
+		if (event != null && event.shouldCommit()) {
+			event.record("add", this.size, pos, this.RotationCount.depth - depth,
+					this.RotationCount.count - rotations);
+		}
+		for (EditListener listener : this.listeners) {
+			listener.inserted(pos, ch);
+		}
+		if (this.stats != null) {
+			this.stats.recordEdit(EditTreeStats.ADD, this.RotationCount);
+			this.publishShape();
+		}
+		if (this.pathCheckInterval != 0) {
+			this.samplePathCheck("add", pos);
+		}
+	}
+
+	/**
+	 * Adds all of text to the end as one balanced subtree joined onto the right
+	 * spine: O(k + log n) for k characters instead of k separate adds. Listeners
+	 * hear about it as one insertion.
+	 * 
+	 * @param text characters to append
+	 * @throws IllegalStateException if the tree would grow past
+	 *                               Integer.MAX_VALUE characters
+	 */
+	public void append(CharSequence text) {
+		int length = text.length();
+		if (length == 0) {
+			return;
+		}
+		if (length > Integer.MAX_VALUE - this.size) {
+			throw new IllegalStateException("an EditTree can't hold " + ((long) this.size + length) + " characters");
+		}
+		EditTreeEvent event = EditTreeEvent.start();
+		int pos = this.size;
+		int rotations = this.RotationCount.count;
+		Node rest = build(text, 1, length, this.RotationCount.brackets);
+		// the first character becomes the node the join hangs both sides on
+		Node mid = this.RotationCount.newNode(text.charAt(0));
+		this.spine.clear();
+		this.root = Node.join(this.root, this.size, mid, rest, this.RotationCount);
+		this.size += length;
+		if (event != null && event.shouldCommit()) {
+			event.record("append", this.size, pos, 0, this.RotationCount.count - rotations);
+		}
+		for (EditListener listener : this.listeners) {
+			listener.inserted(pos, text);
+		}
+		if (this.stats != null) {
+			this.stats.recordEdit(EditTreeStats.ADD, this.RotationCount);
+			this.publishShape();
+		}
+		if (this.pathCheckInterval != 0) {
+			this.samplePathCheck("append", pos);
+		}
+	}
+
+	/**
+	 * Replaces the length characters starting at pos with text as one edit: the
+	 * range is split off the tree and text, built as a balanced subtree, is
+	 * joined in its place, in O(log^2 n + length + text.length()) instead of a
+	 * separate descent and rebalance for every character. Listeners hear about
+	 * it once, through replaced().
+	 * 
+	 * @param pos    first position to replace
+	 * @param length number of characters to replace; 0 just inserts text
+	 * @param text   characters to put in their place; empty just deletes
+	 * @throws IndexOutOfBoundsException unless 0 <= pos <= pos + length <= size
+	 * @throws IllegalStateException     if the tree would grow past
+	 *                                   Integer.MAX_VALUE characters
+	 */
+	public void replace(int pos, int length, CharSequence text) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		int inserted = text.length();
+		if (inserted - length > Integer.MAX_VALUE - this.size) {
+			throw new IllegalStateException("an EditTree can't hold " + ((long) this.size + inserted - length) + " characters");
+		}
+		if (length == 0 && inserted == 0) {
+			return;
+		}
+		EditTreeEvent event = EditTreeEvent.start();
+		int depth = this.RotationCount.depth;
+		int rotations = this.RotationCount.count;
+		this.spine.clear();
+		this.splice(pos, length, text);
+		if (event != null && event.shouldCommit()) {
+			event.record("replace", this.size, pos, this.RotationCount.depth - depth,
+					this.RotationCount.count - rotations);
+		}
+		for (EditListener listener : this.listeners) {
+			listener.replaced(pos, length, text);
+		}
+		if (this.stats != null) {
+			this.RotationCount.resetOperation(); // not one of the operations stats counts
+			this.publishShape();
+		}
+		if (this.pathCheckInterval != 0) {
+			this.samplePathCheck("replace", pos);
+		}
+	}
+
+	/**
+	 * Makes all the edits in batch as one change. Positions in the batch are all
+	 * in the tree as it is before any of them, so each edit lands where it was
+	 * aimed however many characters the edits before it add or remove. A few
+	 * edits are made in a single walk down the tree, sharing the path from the
+	 * root, and many by rebuilding the tree, as in replaceAll(). Listeners hear
+	 * about the edits last to first, each as one replaced(), so each position
+	 * they are told is still right when they get it, between batchStarted() and
+	 * batchFinished().
+	 * 
+	 * @param batch edits to make; left as it is
+	 * @throws IndexOutOfBoundsException if an edit reaches outside the tree
+	 * @throws IllegalArgumentException  if the ranges of two edits overlap
+	 * @throws IllegalStateException     if the tree would grow past
+	 *                                   Integer.MAX_VALUE characters
+	 */
+	public void applyBatch(EditBatch batch) {
+		int count = batch.size();
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		CharSequence[] texts = new CharSequence[count];
+		batch.sortInto(starts, ends, texts);
+		for (int i = 0; i < count; i++) {
+			if (ends[i] < starts[i] || ends[i] > this.size) {
+				throw new IndexOutOfBoundsException("edit " + starts[i] + " reaches past " + this.size);
+			}
+			if (i > 0 && starts[i] < ends[i - 1]) {
+				throw new IllegalArgumentException("edits at " + starts[i - 1] + " and " + starts[i] + " overlap");
+			}
+		}
+		this.replaceRanges(starts, ends, texts, count, null, "applyBatch");
+	}
+
+	/**
+	 * Replaces every occurrence of target with replacement, left to right and
+	 * without overlaps, as String.replace() does, reading the tree once. When the
+	 * matches are few for the size of the tree, only the paths to them are taken
+	 * apart and joined back together around the replacements, in one walk down
+	 * the tree; otherwise the result is built afresh as a balanced tree in
+	 * O(n + output). Listeners hear
+	 * about the matches last to first, each as one replaced(), between
+	 * batchStarted() and batchFinished().
+	 * 
+	 * @param target      text to look for
+	 * @param replacement text to put in its place
+	 * @return the number of occurrences replaced
+	 * @throws IllegalArgumentException if target is empty
+	 * @throws IllegalStateException    if the result would be longer than
+	 *                                  Integer.MAX_VALUE characters
+	 */
+	public int replaceAll(CharSequence target, CharSequence replacement) {
+		int length = target.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("target must not be empty");
+		}
+		int[] starts = new TextSearch(false, target).findAll(this);
+		// findAll() reports overlapping matches too; keep the ones String.replace() would
+		int count = 0;
+		int next = 0;
+		for (int start : starts) {
+			if (start >= next) {
+				starts[count++] = start;
+				next = start + length;
+			}
+		}
+		int[] ends = new int[count];
+		CharSequence[] texts = new CharSequence[count];
+		for (int i = 0; i < count; i++) {
+			ends[i] = starts[i] + length;
+			texts[i] = replacement;
+		}
+		this.replaceRanges(starts, ends, texts, count, null, "replaceAll");
+		return count;
+	}
+
+	/**
+	 * Replaces every match of pattern, as Matcher.replaceAll() does: replacement
+	 * may refer to groups with $n or ${name}. Otherwise the same as
+	 * replaceAll(CharSequence, CharSequence), except that the pattern is matched
+	 * against a copy of the text, since regular expressions need to read back
+	 * and forth.
+	 * 
+	 * @param pattern     what to look for
+	 * @param replacement what to put in place of each match
+	 * @return the number of matches replaced
+	 * @throws IllegalStateException if the result would be longer than
+	 *                               Integer.MAX_VALUE characters
+	 */
+	public int replaceAll(Pattern pattern, String replacement) {
+		char[] text = this.toCharArray();
+		Matcher matcher = pattern.matcher(CharBuffer.wrap(text));
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		CharSequence[] texts = new CharSequence[16];
+		int count = 0;
+		int appended = 0;
+		StringBuilder expanded = new StringBuilder();
+		while (matcher.find()) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				texts = Arrays.copyOf(texts, count * 2);
+			}
+			// appendReplacement() also adds the text since the last match; skip it
+			expanded.setLength(0);
+			matcher.appendReplacement(expanded, replacement);
+			starts[count] = matcher.start();
+			ends[count] = matcher.end();
+			texts[count] = expanded.substring(matcher.start() - appended);
+			appended = matcher.end();
+			count++;
+		}
+		this.replaceRanges(starts, ends, texts, count, text, "replaceAll");
+		return count;
+	}
+
+	// Replaces the count ranges [starts[i], ends[i]), which are in order and
+	// don't overlap, with texts[i]: in one walk down the tree when there are few
+	// of them, otherwise by building the result afresh. text is a copy of the
+	// tree if the caller already has one.
+	private void replaceRanges(int[] starts, int[] ends, CharSequence[] texts, int count, char[] text,
+			String operation) {
+		if (count == 0) {
+			return;
+		}
+		long newSize = this.size;
+		for (int i = 0; i < count; i++) {
+			newSize += texts[i].length() - (ends[i] - starts[i]);
+		}
+		if (newSize > Integer.MAX_VALUE) {
+			throw new IllegalStateException("an EditTree can't hold " + newSize + " characters");
+		}
+		EditTreeEvent event = EditTreeEvent.start();
+		int rotations = this.RotationCount.count;
+		this.spine.clear();
+		if ((long) count * SPLICE_COST < this.size) {
+			BatchApplier applier = new BatchApplier(starts, ends, texts, this.RotationCount);
+			this.root = applier.apply(this.root, this.size, this.root.height(), 0, 0, count);
+			this.size = applier.size;
+			this.RotationCount.keepRotating = true;
+		} else {
+			this.rebuild(starts, ends, texts, count, text == null ? this.toCharArray() : text, (int) newSize);
+		}
+		if (event != null && event.shouldCommit()) {
+			event.record(operation, this.size, -1, 0, this.RotationCount.count - rotations);
+		}
+		for (EditListener listener : this.listeners) {
+			listener.batchStarted();
+			for (int i = count - 1; i >= 0; i--) {
+				listener.replaced(starts[i], ends[i] - starts[i], texts[i]);
+			}
+			listener.batchFinished();
+		}
+		if (this.stats != null) {
+			this.RotationCount.resetOperation(); // not one of the operations stats counts
+			this.publishShape();
+		}
+	}
+
+	// Replaces [pos, pos + length) with text: the range is split off, and text,
+	// built as a balanced subtree, is joined in its place. The ends of text
+	// become the mids of the two joins, so only a pure deletion needs concat().
+	private void splice(int pos, int length, CharSequence text) {
+		RotationTracker tracker = this.RotationCount;
+		Node.split(this.root, this.size, pos, tracker);
+		Node before = tracker.splitLeft;
+		Node after = tracker.splitRight;
+		if (length > 0) {
+			Node.split(after, this.size - pos, length, tracker);
+			Node.retireAll(tracker.splitLeft, tracker);
+			after = tracker.splitRight;
+		}
+		tracker.splitLeft = Node.NULL_NODE;
+		tracker.splitRight = Node.NULL_NODE;
+		int inserted = text.length();
+		if (inserted == 0) {
+			this.root = Node.concat(before, pos, after, tracker);
+		} else {
+			if (inserted > 1) {
+				Node first = tracker.newNode(text.charAt(0));
+				before = Node.join(before, pos, first, build(text, 1, inserted - 1, tracker.brackets), tracker);
+			}
+			Node last = tracker.newNode(text.charAt(inserted - 1));
+			this.root = Node.join(before, pos + inserted - 1, last, after, tracker);
+		}
+		tracker.keepRotating = true;
+		this.size += inserted - length;
+	}
+
+	// Builds the result of replacing the ranges in text as a new tree.
+	private void rebuild(int[] starts, int[] ends, CharSequence[] texts, int count, char[] text, int newSize) {
+		char[] out = new char[newSize];
+		int from = 0;
+		int to = 0;
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(text, from, out, to, starts[i] - from);
+			to += starts[i] - from;
+			CharSequence replacement = texts[i];
+			for (int j = 0; j < replacement.length(); j++) {
+				out[to++] = replacement.charAt(j);
+			}
+			from = ends[i];
+		}
+		System.arraycopy(text, from, out, to, text.length - from);
+		this.root = build(CharBuffer.wrap(out), 0, newSize, this.RotationCount.brackets);
+		this.size = newSize;
+	}
+
+	// Balanced subtree of s[from, to), built in parallel when it is large, of
+	// the kind of nodes brackets calls for (see Node.leaf()).
+	static Node build(CharSequence s, int from, int to, Brackets brackets) {
+		if (to - from > ParallelTreeBuilder.SEQUENTIAL_CUTOFF) {
+			return ParallelTreeBuilder.build(ForkJoinPool.commonPool(), s, from, to, brackets);
+		}
+		return Node.buildBalanced(s, from, to, brackets);
+	}
+
+	// Appends go down the cached right spine; anything else invalidates it.
+	private Node insert(char ch, int pos) {
+		if (pos == this.size && this.appendFastPath) {
+			return this.spine.append(this.root, ch, this.RotationCount);
+		}
+		this.spine.clear();
+		return this.root.addHelp(ch, pos, this.RotationCount);
 	}
 
 	/**
@@ -181,7 +701,198 @@ public class EditTree {
 			// bc it doesn't include 0 in size!!
 			throw new IndexOutOfBoundsException();
 		}
-		return root.getHelp(pos);
+		EditTreeEvent event = EditTreeEvent.start();
+		if (this.stats == null && event == null) {
+			return this.root.getHelp(pos);
+		}
+		// one descent gives both the character and its depth; the depth is put
+		// back so it isn't counted again by the next edit's statistics
+		int before = this.RotationCount.depth;
+		char c = this.root.getHelp(pos, this.RotationCount);
+		int depth = this.RotationCount.depth - before;
+		this.RotationCount.depth = before;
+		if (this.stats != null) {
+			this.stats.recordGet(depth);
+		}
+		if (event != null && event.shouldCommit()) {
+			event.record("get", this.size, pos, depth, 0);
+		}
+		return c;
+	}
+
+	/**
+	 * Looks up many positions at once: out[i] becomes get(sortedPositions[i]).
+	 * The tree is walked once, in order, and the positions are divided between
+	 * the two sides of each node on the way down, so the path from the root is
+	 * shared: k positions cost O(k log(n/k)) steps rather than k descents of
+	 * O(log n), approaching O(k + log n) when they are close together.
+	 * 
+	 * @param sortedPositions positions to look up, in non-decreasing order;
+	 *                        repeats are fine
+	 * @param out             receives the characters; at least as long as
+	 *                        sortedPositions
+	 * @throws IllegalArgumentException  if the positions are out of order or out
+	 *                                   is too short
+	 * @throws IndexOutOfBoundsException if a position is outside the tree
+	 */
+	public void getAll(int[] sortedPositions, char[] out) {
+		int count = sortedPositions.length;
+		if (out.length < count) {
+			throw new IllegalArgumentException("out holds " + out.length + " of " + count + " characters");
+		}
+		for (int i = 1; i < count; i++) {
+			if (sortedPositions[i] < sortedPositions[i - 1]) {
+				throw new IllegalArgumentException("positions out of order at index " + i);
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		if (sortedPositions[0] < 0 || sortedPositions[count - 1] >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		EditTreeEvent event = EditTreeEvent.start();
+		this.root.getAll(0, sortedPositions, 0, count, out);
+		if (event != null && event.shouldCommit()) {
+			event.record("getAll", this.size, sortedPositions[0], 0, 0);
+		}
+	}
+
+	/**
+	 * Copies the characters from srcBegin up to srcEnd into dst, starting at
+	 * dstBegin, like String.getChars(). Only the paths to the two ends and the
+	 * nodes in between are visited: O(log n + srcEnd - srcBegin).
+	 * 
+	 * @param srcBegin position of the first character to copy
+	 * @param srcEnd   position after the last character to copy
+	 * @param dst      receives the characters
+	 * @param dstBegin where the first one goes in dst
+	 * @throws IndexOutOfBoundsException unless 0 <= srcBegin <= srcEnd <= size
+	 *                                   and the characters fit in dst
+	 */
+	public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+		if (srcBegin < 0 || srcEnd < srcBegin || srcEnd > this.size || dstBegin < 0
+				|| dstBegin > dst.length - (srcEnd - srcBegin)) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.root.getChars(0, srcBegin, srcEnd, dst, dstBegin);
+	}
+
+	/**
+	 * Same as getAll(int[], char[]) for positions in any order: they are sorted
+	 * first, remembering where each came from.
+	 * 
+	 * @param positions positions to look up
+	 * @return the character at each position, in the order given
+	 * @throws IndexOutOfBoundsException if a position is outside the tree
+	 */
+	public char[] getAll(int[] positions) {
+		int count = positions.length;
+		char[] out = new char[count];
+		for (int i = 1; i < count; i++) {
+			if (positions[i] < positions[i - 1]) {
+				// the position above the index, so the sorted keys say where each came from
+				long[] keys = new long[count];
+				for (int j = 0; j < count; j++) {
+					keys[j] = (long) positions[j] << 32 | j;
+				}
+				Arrays.sort(keys);
+				int[] sorted = new int[count];
+				for (int j = 0; j < count; j++) {
+					sorted[j] = (int) (keys[j] >>> 32);
+				}
+				char[] found = new char[count];
+				this.getAll(sorted, found);
+				for (int j = 0; j < count; j++) {
+					out[(int) keys[j]] = found[j];
+				}
+				return out;
+			}
+		}
+		this.getAll(positions, out);
+		return out;
+	}
+
+	/**
+	 * @param c character to look for
+	 * @return the position of the first c, or -1 if there is none
+	 */
+	public int indexOf(char c) {
+		return this.indexOf(c, 0);
+	}
+
+	/**
+	 * Finds the next c at or after fromIndex, like String.indexOf(). Once
+	 * enableSummaries() has been called, every node summarizes which characters
+	 * its subtree holds, so subtrees without c are skipped and finding a
+	 * character that is rare in the text costs about O(log n) rather than a
+	 * scan. Without summaries it is a scan.
+	 * 
+	 * @param c         character to look for
+	 * @param fromIndex where to start; negative means 0
+	 * @return the position of the first c at or after fromIndex, or -1
+	 */
+	public int indexOf(char c, int fromIndex) {
+		fromIndex = Math.max(fromIndex, 0);
+		if (fromIndex >= this.size) {
+			return -1;
+		}
+		return this.root.indexOf(c, CharMask.bit(c), fromIndex, 0);
+	}
+
+	/**
+	 * @param c character to look for
+	 * @return the position of the last c, or -1 if there is none
+	 */
+	public int lastIndexOf(char c) {
+		return this.lastIndexOf(c, this.size - 1);
+	}
+
+	/**
+	 * Finds the previous c at or before fromIndex, like String.lastIndexOf().
+	 * 
+	 * @param c         character to look for
+	 * @param fromIndex where to start; past the end means the last position
+	 * @return the position of the last c at or before fromIndex, or -1
+	 */
+	public int lastIndexOf(char c, int fromIndex) {
+		fromIndex = Math.min(fromIndex, this.size - 1);
+		if (fromIndex < 0) {
+			return -1;
+		}
+		return this.root.lastIndexOf(c, CharMask.bit(c), fromIndex, 0);
+	}
+
+	/**
+	 * Finds the bracket that pairs with the one at pos, for the pairs given to
+	 * enableSummaries(). Every node summarizes the bracket nesting of its
+	 * subtree, so the search skips any subtree the nesting can't close in and
+	 * takes O(log n) however far away the match is.
+	 * 
+	 * @param pos position of a bracket
+	 * @return the position of its match, or -1 if the character at pos is not a
+	 *         bracket, has no match, or is matched by a bracket of another kind
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than size
+	 * @throws IllegalStateException     if summaries aren't enabled
+	 */
+	public int matchingBracket(int pos) throws IndexOutOfBoundsException {
+		Brackets brackets = this.RotationCount.brackets;
+		if (brackets == null) {
+			throw new IllegalStateException("matchingBracket() needs enableSummaries()");
+		}
+		char c = this.get(pos);
+		int value = brackets.value(c);
+		int match;
+		if (value > 0) {
+			int limit = this.root.bracketsBefore(pos + 1);
+			match = this.root.closingAfter(pos + 1, 0, 0, limit);
+		} else if (value < 0) {
+			int limit = this.root.bracketsBefore(pos);
+			match = pos == 0 ? -1 : this.root.openingBefore(pos - 1, 0, 0, limit);
+		} else {
+			return -1;
+		}
+		return match >= 0 && this.root.getHelp(match) == brackets.partner(c) ? match : -1;
 	}
 
 	// MILESTONE 1: They next two "slow" methods are useful for testing, debugging
@@ -253,6 +964,144 @@ public class EditTree {
 		return this.RotationCount.count; // replace by a real calculation.
 	}
 
+	/**
+	 * @return rough number of heap bytes this tree's nodes take up
+	 */
+	public long estimatedRetainedBytes() {
+		return (long) this.size * this.nodeBytes();
+	}
+
+	private int nodeBytes() {
+		return this.RotationCount.brackets == null ? Node.ESTIMATED_BYTES : SummaryNode.ESTIMATED_BYTES;
+	}
+
+	/**
+	 * Makes every node keep a summary of its subtree for searching: which
+	 * characters it holds, so indexOf(), lastIndexOf() and TextSearch skip
+	 * subtrees that can't match, and its nesting of brackets, which
+	 * matchingBracket() needs. The summaries take a node from about 32 to
+	 * about 48 bytes, and every edit keeps them up on the path it changes, so
+	 * trees that are never searched go without. Enabling them rebuilds the
+	 * nodes, in O(n); calling this again switches to other brackets.
+	 * 
+	 * @param brackets pairs for matchingBracket(), e.g. Brackets.DEFAULT
+	 * @throws IllegalArgumentException if brackets is null
+	 */
+	public void enableSummaries(Brackets brackets) {
+		this.RotationCount.brackets = checkBrackets(brackets);
+		this.renewNodes();
+	}
+
+	/**
+	 * Goes back to plain nodes without summaries, in O(n).
+	 */
+	public void disableSummaries() {
+		if (this.RotationCount.brackets != null) {
+			this.RotationCount.brackets = null;
+			this.renewNodes();
+		}
+	}
+
+	/**
+	 * @return the brackets the summaries count, or null if they aren't enabled
+	 */
+	public Brackets getBrackets() {
+		return this.RotationCount.brackets;
+	}
+
+	private static Brackets checkBrackets(Brackets brackets) {
+		if (brackets == null) {
+			throw new IllegalArgumentException("brackets must not be null");
+		}
+		return brackets;
+	}
+
+	// Copies the nodes into ones of the kind RotationCount.brackets calls for,
+	// with the same shape. The recycled nodes are the old kind, so they go too.
+	private void renewNodes() {
+		this.size = 0; // CloneEditTree() counts them again
+		this.root = this.CloneEditTree(this.root);
+		this.spine.clear();
+		NodePool pool = this.RotationCount.pool;
+		if (pool != null) {
+			this.RotationCount.pool = new NodePool(pool.capacity());
+		}
+		if (this.stats != null) {
+			this.publishShape();
+		}
+	}
+
+	/**
+	 * Starts counting operations, rotations by kind and descent depths for this
+	 * tree. The returned object can be read from other threads. Calling this
+	 * again, even after disableStatistics(), returns the same counters.
+	 * 
+	 * @return the statistics for this tree
+	 */
+	public EditTreeStats enableStatistics() {
+		if (this.stats == null) {
+			// drop whatever the tracker gathered while nobody was counting
+			this.RotationCount.resetOperation();
+			this.stats = this.disabledStats == null ? new EditTreeStats() : this.disabledStats;
+			this.disabledStats = null;
+			this.publishShape();
+			this.stats.setEnabled(true);
+		}
+		return this.stats;
+	}
+
+	// Hands the size, height and rotation count to the statistics, where other
+	// threads can read them without walking nodes this thread is changing.
+	private void publishShape() {
+		this.stats.publishShape(this.size, this.root.fastHeight(), this.RotationCount.count, this.nodeBytes());
+	}
+
+	/**
+	 * @return the statistics for this tree, or null if they aren't enabled
+	 */
+	public EditTreeStats getStatistics() {
+		return this.stats;
+	}
+
+	/**
+	 * Stops counting. The hot paths go back to a single null check. The
+	 * counters say they are disabled, so a monitor reading them doesn't pass
+	 * off their last values as current.
+	 */
+	public void disableStatistics() {
+		if (this.stats != null) {
+			this.stats.setEnabled(false);
+			this.disabledStats = this.stats;
+			this.stats = null;
+		}
+	}
+
+	/**
+	 * Makes this tree keep up to maxRetained deleted nodes and reuse them for
+	 * later insertions, so delete/retype cycles stop allocating. Calling this
+	 * again replaces the pool.
+	 *
+	 * @param maxRetained
+	 *            most nodes held for reuse at once
+	 */
+	public void enableNodeRecycling(int maxRetained) {
+		this.RotationCount.pool = new NodePool(maxRetained);
+	}
+
+	/**
+	 * Drops the recycled nodes; insertions allocate fresh nodes again.
+	 */
+	public void disableNodeRecycling() {
+		this.RotationCount.pool = null;
+	}
+
+	/**
+	 * @return the pool deleted nodes go to, or null if recycling is off
+	 */
+	public NodePool getNodePool() {
+		return this.RotationCount.pool;
+	}
+
 	/**
 	 * MILESTONE 2 Returns true iff (read as "if and only if") for every node in the
 	 * tree, the node's balance code is correct based on its childrens' heights.
@@ -273,6 +1122,29 @@ public class EditTree {
 		return this.root.balanceCodesAreCorrect();
 	}
 
+	/**
+	 * Checks ranks, balance codes, subtree summaries, the size field and the AVL
+	 * height bound in a single O(n) pass that allocates nothing per node, so it
+	 * is cheap enough to run on sampled production trees. Decode the result with
+	 * TreeValidator.kind(), position() and describe().
+	 * 
+	 * @return packed TreeValidator result
+	 */
+	public long checkInvariants() {
+		return TreeValidator.validate(this.root, this.size, TreeValidator.CHECK_ALL);
+	}
+
+	/**
+	 * Same as checkInvariants(), but the subtrees near the root are checked in
+	 * parallel on the given pool.
+	 * 
+	 * @param pool
+	 * @return packed TreeValidator result
+	 */
+	public long checkInvariants(ForkJoinPool pool) {
+		return TreeValidator.validate(this.root, this.size, TreeValidator.CHECK_ALL, pool);
+	}
+
 	/**
 	 * MILESTONE 2 Only write this one once your balance codes are correct. It will
 	 * rely on correct balance codes to find the height of the tree in O(log n)
@@ -297,16 +1169,102 @@ public class EditTree {
 		// node to be deleted with either its in-order successor or predecessor.
 		// The tests assume assume that you will replace it with the
 		// *successor*.
-		if (pos < 0 || pos > size) {
+		if (pos < 0 || pos >= size) {
 			throw new IndexOutOfBoundsException();
 		}
+		EditTreeEvent event = EditTreeEvent.start();
+		int depth = this.RotationCount.depth;
+		int rotations = this.RotationCount.count;
 		char c = this.root.getHelp(pos);
+		this.spine.clear();
+		this.RotationCount.successorMoved = false;
 		this.root = this.root.delete(pos, this.RotationCount);
 		this.size--;
 		this.RotationCount.keepRotating = true;
+		if (event != null && event.shouldCommit()) {
+			event.record("delete", this.size, pos, this.RotationCount.depth - depth,
+					this.RotationCount.count - rotations);
+		}
+		for (EditListener listener : this.listeners) {
+			listener.deleted(pos, 1);
+		}
+		if (this.stats != null) {
+			this.stats.recordEdit(EditTreeStats.DELETE, this.RotationCount);
+			this.publishShape();
+		}
+		if (this.pathCheckInterval != 0) {
+			// a successor that moved up left changes on the path to pos + 1 as well
+			this.samplePathCheck("delete", pos, this.RotationCount.successorMoved ? pos + 1 : -1);
+		}
 		return c;
 	}
 
+	/**
+	 * Attaches a listener that hears about every later edit to this tree.
+	 * 
+	 * @param listener
+	 */
+	public void addEditListener(EditListener listener) {
+		EditListener[] more = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+		more[this.listeners.length] = listener;
+		this.listeners = more;
+	}
+
+	/**
+	 * Detaches a listener added with addEditListener(). Does nothing if it isn't
+	 * attached.
+	 * 
+	 * @param listener
+	 */
+	public void removeEditListener(EditListener listener) {
+		for (int i = 0; i < this.listeners.length; i++) {
+			if (this.listeners[i] == listener) {
+				EditListener[] fewer = new EditListener[this.listeners.length - 1];
+				System.arraycopy(this.listeners, 0, fewer, 0, i);
+				System.arraycopy(this.listeners, i + 1, fewer, i, fewer.length - i);
+				this.listeners = fewer;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Debug mode: after every interval-th add() or delete(), re-verify the ranks
+	 * and balance codes along the path that edit touched, in O(log n) nodes. A
+	 * broken invariant throws an IllegalStateException naming the edit and the
+	 * position of the bad node, so corruption is caught at the edit that caused
+	 * it. Use 1 to check every edit and 0 to turn checking off.
+	 * 
+	 * @param interval how many edits to wait between checks
+	 */
+	public void setPathCheckInterval(int interval) {
+		if (interval < 0) {
+			throw new IllegalArgumentException("interval must not be negative");
+		}
+		this.pathCheckInterval = interval;
+		this.editsUntilPathCheck = interval;
+	}
+
+	private void samplePathCheck(String operation, int pos) {
+		this.samplePathCheck(operation, pos, -1);
+	}
+
+	// Also checks the path to second, unless it is negative.
+	private void samplePathCheck(String operation, int pos, int second) {
+		if (--this.editsUntilPathCheck > 0) {
+			return;
+		}
+		this.editsUntilPathCheck = this.pathCheckInterval;
+		long result = TreeValidator.validatePath(this.root, this.size, pos);
+		if (TreeValidator.kind(result) == TreeValidator.OK && second >= 0) {
+			result = TreeValidator.validatePath(this.root, this.size, second);
+		}
+		if (TreeValidator.kind(result) != TreeValidator.OK) {
+			throw new IllegalStateException(
+					"after " + operation + "(" + pos + "): " + TreeValidator.describe(result));
+		}
+	}
+
 	/**
 	 * MILESTONE 3 This method operates in O(length), where length is the parameter
 	 * provided. The way to do this is to recurse/iterate only over the nodes of the
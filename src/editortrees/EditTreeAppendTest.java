@@ -0,0 +1,109 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that appends through the cached right spine build exactly the tree the
+ * ordinary insertion path does.
+ */
+public class EditTreeAppendTest {
+
+	private static void assertSameTree(EditTree expected, EditTree actual) {
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.toDebugString(), actual.toDebugString());
+		assertEquals(expected.totalRotationCount(), actual.totalRotationCount());
+		assertEquals(TreeValidator.OK, TreeValidator.kind(actual.checkInvariants()));
+	}
+
+	@Test
+	public void testAppendsMatchInsertion() {
+		EditTree slow = new EditTree();
+		slow.appendFastPath = false;
+		EditTree fast = new EditTree();
+		for (int i = 0; i < 5000; i++) {
+			char ch = (char) ('a' + i % 26);
+			slow.add(ch);
+			fast.add(ch);
+			if (i < 100 || i % 500 == 0) {
+				assertSameTree(slow, fast);
+			}
+		}
+		assertSameTree(slow, fast);
+	}
+
+	@Test
+	public void testMixedEditsInvalidateTheSpine() {
+		Random random = new Random(39);
+		EditTree slow = new EditTree();
+		slow.appendFastPath = false;
+		EditTree fast = new EditTree();
+		for (int i = 0; i < 20000; i++) {
+			int choice = random.nextInt(10);
+			if (choice < 2 && slow.size() > 0) {
+				int pos = random.nextInt(slow.size());
+				assertEquals(slow.delete(pos), fast.delete(pos));
+			} else if (choice < 4) {
+				int pos = random.nextInt(slow.size() + 1);
+				slow.add('m', pos);
+				fast.add('m', pos);
+			} else {
+				char ch = (char) ('a' + random.nextInt(26));
+				slow.add(ch);
+				fast.add(ch);
+			}
+			if (i % 1000 == 0) {
+				assertSameTree(slow, fast);
+			}
+		}
+		assertSameTree(slow, fast);
+	}
+
+	@Test
+	public void testAppendToBuiltTree() {
+		EditTree slow = new EditTree("built from a string first");
+		slow.appendFastPath = false;
+		EditTree fast = new EditTree("built from a string first");
+		for (char ch : ", then appended to".toCharArray()) {
+			slow.add(ch);
+			fast.add(ch);
+		}
+		assertSameTree(slow, fast);
+	}
+
+	@Test
+	public void testAppendText() {
+		EditTree t = new EditTree("abc");
+		final StringBuilder heard = new StringBuilder();
+		t.addEditListener(new EditListener() {
+			@Override
+			public void inserted(int pos, char ch) {
+				heard.append(pos).append(ch);
+			}
+
+			@Override
+			public void deleted(int pos, int length) {
+			}
+		});
+		t.append("");
+		t.append("de");
+		assertEquals("abcde", t.toString());
+		assertEquals("3d4e", heard.toString());
+		StringBuilder expected = new StringBuilder("abcde");
+		for (int length = 1; length < 300; length += 7) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				text.append((char) ('a' + (i * length) % 26));
+			}
+			t.append(text);
+			expected.append(text);
+			assertEquals(TreeValidator.OK, TreeValidator.kind(t.checkInvariants()));
+		}
+		t.add('!');
+		expected.append('!');
+		assertEquals(expected.toString(), t.toString());
+	}
+}
@@ -0,0 +1,190 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests applyBatch() against making the same edits one at a time, last to
+ * first, on a StringBuilder.
+ */
+public class EditTreeBatchTest {
+
+	private static void assertValid(EditTree tree) {
+		assertEquals(TreeValidator.OK, TreeValidator.kind(tree.checkInvariants()));
+	}
+
+	// Fills batch with count edits that don't overlap, in a random order, and
+	// makes them on expected.
+	private static void randomBatch(Random random, EditBatch batch, StringBuilder expected, int count) {
+		int[] starts = new int[count];
+		int[] deletes = new int[count];
+		String[] inserts = new String[count];
+		int next = 0;
+		for (int i = 0; i < count; i++) {
+			int gap = expected.length() - next;
+			starts[i] = next + (gap == 0 ? 0 : random.nextInt(Math.min(gap, 2 * expected.length() / count + 1) + 1));
+			deletes[i] = random.nextInt(3) == 0 ? 0 : random.nextInt(Math.min(5, expected.length() - starts[i]) + 1);
+			inserts[i] = "" + (char) ('A' + i % 26);
+			if (random.nextInt(4) == 0) {
+				inserts[i] = random.nextBoolean() ? "" : inserts[i] + inserts[i];
+			}
+			next = starts[i] + deletes[i];
+		}
+		for (int i = count - 1; i >= 0; i--) {
+			expected.replace(starts[i], starts[i] + deletes[i], inserts[i]);
+		}
+		// positions last to first, so the batch has to sort them; edits at the
+		// same position stay in order
+		int end = count;
+		while (end > 0) {
+			int start = end - 1;
+			while (start > 0 && starts[start - 1] == starts[end - 1]) {
+				start--;
+			}
+			for (int i = start; i < end; i++) {
+				batch.add(starts[i], deletes[i], inserts[i]);
+			}
+			end = start;
+		}
+	}
+
+	@Test
+	public void testBatchesMatchOneAtATime() {
+		Random random = new Random(49);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			expected.append((char) ('a' + random.nextInt(26)));
+		}
+		EditTree tree = new EditTree(expected);
+		EditBatch batch = new EditBatch();
+		for (int round = 0; round < 200; round++) {
+			batch.clear();
+			int count = 1 + random.nextInt(round % 10 == 0 ? 5000 : 30);
+			randomBatch(random, batch, expected, count);
+			tree.applyBatch(batch);
+			assertEquals(expected.length(), tree.size());
+			if (round % 20 == 0) {
+				assertEquals(expected.toString(), tree.toString());
+				assertValid(tree);
+			}
+		}
+		assertEquals(expected.toString(), tree.toString());
+		assertValid(tree);
+	}
+
+	@Test
+	public void testSmallTrees() {
+		Random random = new Random(50);
+		for (int round = 0; round < 2000; round++) {
+			StringBuilder expected = new StringBuilder();
+			for (int i = random.nextInt(12); i > 0; i--) {
+				expected.append((char) ('a' + random.nextInt(26)));
+			}
+			EditTree tree = new EditTree(expected);
+			EditBatch batch = new EditBatch();
+			randomBatch(random, batch, expected, 1 + random.nextInt(4));
+			tree.applyBatch(batch);
+			assertEquals(expected.toString(), tree.toString());
+			assertValid(tree);
+		}
+	}
+
+	@Test
+	public void testEveryCursorTypes() {
+		EditTree tree = new EditTree("one\ntwo\nthree\n");
+		EditBatch batch = new EditBatch();
+		batch.insert(0, "// ");
+		batch.insert(4, "// ");
+		batch.insert(8, "// ");
+		tree.applyBatch(batch);
+		assertEquals("// one\n// two\n// three\n", tree.toString());
+	}
+
+	@Test
+	public void testInsertionsAtOnePositionKeepTheirOrder() {
+		EditTree tree = new EditTree("abcdef");
+		EditBatch batch = new EditBatch();
+		batch.add(2, 2, "X");
+		batch.insert(2, "1");
+		batch.insert(2, "2");
+		batch.delete(0, 1);
+		tree.applyBatch(batch);
+		assertEquals("b12Xef", tree.toString());
+	}
+
+	@Test
+	public void testDeleteEverything() {
+		EditTree tree = new EditTree("abcdef");
+		tree.enableNodeRecycling(10);
+		EditBatch batch = new EditBatch();
+		batch.delete(3, 3);
+		batch.add(0, 3, "xyz");
+		tree.applyBatch(batch);
+		assertEquals("xyz", tree.toString());
+		batch.clear();
+		batch.delete(0, 3);
+		tree.applyBatch(batch);
+		assertEquals("", tree.toString());
+		assertEquals(0, tree.size());
+		assertValid(tree);
+	}
+
+	@Test
+	public void testListenersCanReplayTheBatch() {
+		Random random = new Random(51);
+		StringBuilder text = new StringBuilder("the quick brown fox jumps over the lazy dog");
+		EditTree tree = new EditTree(text);
+		StringBuilder replayed = new StringBuilder(text);
+		tree.addEditListener(new EditListener() {
+			@Override
+			public void inserted(int pos, char ch) {
+				replayed.insert(pos, ch);
+			}
+
+			@Override
+			public void deleted(int pos, int length) {
+				replayed.delete(pos, pos + length);
+			}
+		});
+		for (int round = 0; round < 50; round++) {
+			EditBatch batch = new EditBatch();
+			randomBatch(random, batch, text, 1 + random.nextInt(6));
+			tree.applyBatch(batch);
+			assertEquals(tree.toString(), replayed.toString());
+		}
+	}
+
+	@Test
+	public void testBadBatchesChangeNothing() {
+		EditTree tree = new EditTree("abcdef");
+		EditBatch overlapping = new EditBatch();
+		overlapping.delete(1, 3);
+		overlapping.insert(2, "x");
+		EditBatch outside = new EditBatch();
+		outside.insert(0, "x");
+		outside.delete(5, 2);
+		try {
+			tree.applyBatch(overlapping);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			// the insertion is inside the deleted range
+		}
+		try {
+			tree.applyBatch(outside);
+			fail();
+		} catch (IndexOutOfBoundsException expected) {
+			// the deletion runs off the end
+		}
+		assertEquals("abcdef", tree.toString());
+		try {
+			new EditBatch().delete(0, -1);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			// negative length
+		}
+	}
+}
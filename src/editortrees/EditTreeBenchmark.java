@@ -0,0 +1,92 @@
+package editortrees;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command-line timings for the bulk operations on EditTree. Not a unit test:
+ * run it by hand with a heap large enough for the inputs, e.g.
+ * 
+ * java -Xmx64g editortrees.EditTreeBenchmark 10 100 500
+ * 
+ * A tree takes about 32 bytes per character and only one is alive at a time,
+ * so the largest size needs a little over 36 bytes per character of heap with
+ * the input and output arrays, e.g. 18g for 500.
+ * 
+ * The arguments are input sizes in millions of characters (default 10). Each
+ * size is built and written back out with 1 to N worker threads, where N is the
+ * number of available processors, and then appended one character at a time,
+ * with and without the cached right spine.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class EditTreeBenchmark {
+
+	private static final int REPEATS = 3;
+
+	public static void main(String[] args) {
+		int[] millions = { 10 };
+		if (args.length > 0) {
+			millions = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				millions[i] = Integer.parseInt(args[i]);
+			}
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int m : millions) {
+			char[] input = randomText(m * 1000000);
+			System.out.printf("%d M characters%n", m);
+			System.out.printf("%8s %12s %12s %10s%n", "threads", "build ms", "export ms", "speedup");
+			double baseline = 0;
+			for (int threads = 1; threads <= cores; threads++) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				double build = Double.MAX_VALUE;
+				double export = Double.MAX_VALUE;
+				for (int r = 0; r < REPEATS; r++) {
+					long start = System.nanoTime();
+					EditTree t = new EditTree(CharBuffer.wrap(input), pool);
+					long built = System.nanoTime();
+					t.toCharArray(pool);
+					long exported = System.nanoTime();
+					build = Math.min(build, (built - start) / 1e6);
+					export = Math.min(export, (exported - built) / 1e6);
+				}
+				pool.shutdown();
+				if (threads == 1) {
+					baseline = build;
+				}
+				System.out.printf("%8d %12.1f %12.1f %9.2fx%n", threads, build, export, baseline / build);
+			}
+			double walk = timeAppends(input, false);
+			double cached = timeAppends(input, true);
+			System.out.printf("%-20s %12s %10s%n", "append path", "ms", "ns/char");
+			System.out.printf("%-20s %12.1f %10.1f%n", "walk from root", walk, walk * 1e6 / input.length);
+			System.out.printf("%-20s %12.1f %10.1f%n", "cached right spine", cached, cached * 1e6 / input.length);
+		}
+	}
+
+	// Best of REPEATS runs of add(char) over the whole input, in ms.
+	private static double timeAppends(char[] input, boolean fastPath) {
+		double best = Double.MAX_VALUE;
+		for (int r = 0; r < REPEATS; r++) {
+			EditTree t = new EditTree();
+			t.appendFastPath = fastPath;
+			long start = System.nanoTime();
+			for (char ch : input) {
+				t.add(ch);
+			}
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	private static char[] randomText(int length) {
+		Random random = new Random(length);
+		char[] text = new char[length];
+		for (int i = 0; i < length; i++) {
+			text[i] = (char) ('a' + random.nextInt(26));
+		}
+		return text;
+	}
+}
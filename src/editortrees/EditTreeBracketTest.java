@@ -0,0 +1,187 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests matchingBracket() against a scan of the text, and that the bracket
+ * counts it relies on survive edits.
+ */
+public class EditTreeBracketTest {
+
+	private static final String ALPHABET = "()[]{}ab \n";
+
+	// the obvious linear scan, with all pairs sharing one count
+	private static int scan(String s, int pos) {
+		char c = s.charAt(pos);
+		int value = Brackets.DEFAULT.value(c);
+		if (value == 0) {
+			return -1;
+		}
+		int count = 0;
+		for (int i = pos; i >= 0 && i < s.length(); i += value) {
+			count += Brackets.DEFAULT.value(s.charAt(i));
+			if (count == 0) {
+				return s.charAt(i) == Brackets.DEFAULT.partner(c) ? i : -1;
+			}
+		}
+		return -1;
+	}
+
+	private static void assertMatchesScan(String expected, EditTree t) {
+		assertEquals(TreeValidator.describe(t.checkInvariants()), TreeValidator.OK,
+				TreeValidator.kind(t.checkInvariants()));
+		for (int pos = 0; pos < expected.length(); pos++) {
+			assertEquals("at " + pos, scan(expected, pos), t.matchingBracket(pos));
+		}
+	}
+
+	@Test
+	public void testNestedBrackets() {
+		String s = "f(a[i], {x: (y)}) + [ ]";
+		EditTree t = new EditTree(s, Brackets.DEFAULT);
+		assertEquals(16, t.matchingBracket(1));
+		assertEquals(1, t.matchingBracket(16));
+		assertEquals(5, t.matchingBracket(3));
+		assertEquals(8, t.matchingBracket(15));
+		assertEquals(12, t.matchingBracket(14));
+		assertEquals(22, t.matchingBracket(20));
+		assertEquals(-1, t.matchingBracket(0));
+		assertMatchesScan(s, t);
+	}
+
+	@Test
+	public void testUnmatchedAndMismatched() {
+		EditTree t = new EditTree("((]", Brackets.DEFAULT);
+		assertEquals(-1, t.matchingBracket(0));
+		assertEquals(-1, t.matchingBracket(1)); // closed by ] instead of )
+		assertEquals(-1, t.matchingBracket(2));
+		t = new EditTree(")(", Brackets.DEFAULT);
+		assertEquals(-1, t.matchingBracket(0));
+		assertEquals(-1, t.matchingBracket(1));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testPositionOutOfRange() {
+		new EditTree("()", Brackets.DEFAULT).matchingBracket(2);
+	}
+
+	@Test
+	public void testDeepNesting() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			sb.append("([{".charAt(i % 3));
+		}
+		for (int i = 49999; i >= 0; i--) {
+			sb.append(")]}".charAt(i % 3));
+		}
+		EditTree t = new EditTree();
+		t.enableSummaries(Brackets.DEFAULT);
+		t.append(sb);
+		for (int pos = 0; pos < 50000; pos += 997) {
+			assertEquals(99999 - pos, t.matchingBracket(pos));
+			assertEquals(pos, t.matchingBracket(99999 - pos));
+		}
+	}
+
+	@Test
+	public void testRandomEdits() {
+		Random random = new Random(44);
+		EditTree t = new EditTree();
+		t.enableSummaries(Brackets.DEFAULT);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 6000; i++) {
+			int choice = random.nextInt(10);
+			char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			if (choice < 3 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else if (choice < 6) {
+				int pos = random.nextInt(expected.length() + 1);
+				t.add(c, pos);
+				expected.insert(pos, c);
+			} else {
+				t.add(c); // through the right spine
+				expected.append(c);
+			}
+			if (i % 300 == 0) {
+				assertMatchesScan(expected.toString(), t);
+			}
+		}
+		assertMatchesScan(expected.toString(), t);
+		assertMatchesScan(expected.toString(), new EditTree(expected, Brackets.DEFAULT));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNeedsSummaries() {
+		new EditTree("()").matchingBracket(0);
+	}
+
+	@Test
+	public void testEachTreeHasItsOwnBrackets() {
+		String s = "<a>(b)";
+		EditTree html = new EditTree(s, new Brackets("<>"));
+		EditTree code = new EditTree(s, Brackets.DEFAULT);
+		assertEquals(2, html.matchingBracket(0));
+		assertEquals(-1, html.matchingBracket(3));
+		assertEquals(-1, code.matchingBracket(0));
+		assertEquals(5, code.matchingBracket(3));
+		// a copy counts the same brackets as the original
+		EditTree copy = new EditTree(html);
+		assertEquals(2, copy.matchingBracket(0));
+		// and switching brackets recounts the summaries
+		html.enableSummaries(new Brackets("()<>"));
+		assertEquals(5, html.matchingBracket(3));
+		assertEquals(2, html.matchingBracket(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnpairedBracketsAreRejected() {
+		new Brackets("()[");
+	}
+
+	@Test
+	public void testEnablingAfterEdits() {
+		Random random = new Random(45);
+		EditTree t = new EditTree();
+		t.enableNodeRecycling(32);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			int pos = random.nextInt(expected.length() + 1);
+			t.add(c, pos);
+			expected.insert(pos, c);
+			if (i % 4 == 0) {
+				pos = random.nextInt(expected.length());
+				t.delete(pos);
+				expected.deleteCharAt(pos);
+			}
+		}
+		assertNull(t.getBrackets());
+		assertEquals(expected.length() * 32L, t.estimatedRetainedBytes());
+		String before = t.toDebugString();
+		t.enableSummaries(Brackets.DEFAULT);
+		assertEquals(before, t.toDebugString());
+		assertEquals(expected.length() * 48L, t.estimatedRetainedBytes());
+		assertMatchesScan(expected.toString(), t);
+		// the recycled nodes have to be summary nodes too
+		for (int i = 0; i < 500; i++) {
+			int pos = random.nextInt(expected.length());
+			t.delete(pos);
+			expected.deleteCharAt(pos);
+			char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			pos = random.nextInt(expected.length() + 1);
+			t.add(c, pos);
+			expected.insert(pos, c);
+		}
+		assertMatchesScan(expected.toString(), t);
+		t.disableSummaries();
+		assertEquals(expected.length() * 32L, t.estimatedRetainedBytes());
+		assertEquals(expected.toString(), t.toString());
+	}
+}
@@ -0,0 +1,143 @@
+package editortrees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests for building and exporting whole trees at once, including the parallel
+ * paths that only kick in for large inputs.
+ */
+public class EditTreeBulkTest {
+
+	private static String randomText(int length, long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testToCharArrayMatchesToString() {
+		EditTree t = new EditTree();
+		Random random = new Random(7);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			int pos = random.nextInt(i + 1);
+			char ch = (char) ('a' + random.nextInt(26));
+			t.add(ch, pos);
+			expected.insert(pos, ch);
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertArrayEquals(expected.toString().toCharArray(), t.toCharArray());
+	}
+
+	@Test
+	public void testParallelExportOfLargeTree() {
+		String s = randomText(500000, 1);
+		EditTree t = new EditTree(s);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		assertEquals(s, new String(t.toCharArray(pool)));
+		pool.shutdown();
+		assertEquals(s, t.toString());
+	}
+
+	@Test
+	public void testParallelBuildMatchesSequentialShape() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int length : new int[] { 0, 1, 2, 3, 7, 8, 100, 16385, 100000, 262143, 262144 }) {
+				String s = randomText(length, length);
+				// built on this thread, without the fork-join builder
+				EditTree sequential = new EditTree(Node.buildBalanced(s, 0, length, null), length, 0);
+				EditTree parallel = new EditTree(s, pool);
+				assertEquals(s, parallel.toString());
+				assertEquals(length, parallel.size());
+				assertEquals(sequential.toDebugString(), parallel.toDebugString());
+				assertTrue(parallel.ranksMatchLeftSubtreeSize());
+				assertTrue(parallel.balanceCodesAreCorrect());
+				assertEquals(0, parallel.totalRotationCount());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testBuildFromCharArray() {
+		String s = randomText(40000, 3);
+		EditTree fromArray = new EditTree(s.toCharArray());
+		EditTree fromString = new EditTree(s);
+		assertEquals(s, fromArray.toString());
+		assertEquals(fromString.toDebugString(), fromArray.toDebugString());
+	}
+
+	// random inserts, so the trees joined aren't all perfectly balanced
+	private static EditTree randomShape(int size, Random random) {
+		EditTree t = new EditTree();
+		for (int i = 0; i < size; i++) {
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(i + 1));
+		}
+		return t;
+	}
+
+	@Test
+	public void testJoinKeepsInvariants() {
+		Random random = new Random(38);
+		for (int leftSize = 0; leftSize < 40; leftSize++) {
+			for (int rightSize = 0; rightSize < 40; rightSize++) {
+				EditTree left = randomShape(leftSize, random);
+				EditTree right = randomShape(rightSize, random);
+				String expected = left.toString() + "|" + right.toString();
+				Node joined = Node.join(left.root, leftSize, new Node('|'), right.root, new RotationTracker());
+				EditTree t = new EditTree(joined, leftSize + rightSize + 1, 0);
+				assertEquals(expected, t.toString());
+				assertEquals(TreeValidator.OK, TreeValidator.kind(t.checkInvariants()));
+			}
+		}
+	}
+
+	// hands out at most a few characters per read, like a slow stream would
+	private static Reader trickle(String s) {
+		return new StringReader(s) {
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				return super.read(buffer, offset, Math.min(length, 7));
+			}
+		};
+	}
+
+	@Test
+	public void testReadFromAcrossChunks() throws IOException {
+		int[] lengths = { 0, 1, EditTree.READ_CHUNK - 1, EditTree.READ_CHUNK, EditTree.READ_CHUNK + 1,
+				5 * EditTree.READ_CHUNK + 17 };
+		for (int length : lengths) {
+			String text = randomText(length, length);
+			EditTree t = EditTree.readFrom(trickle(text));
+			assertEquals(text, t.toString());
+			assertEquals(length, t.size());
+			assertEquals(TreeValidator.OK, TreeValidator.kind(t.checkInvariants()));
+		}
+	}
+
+	@Test
+	public void testReadFromInputStream() throws IOException {
+		String text = "h\u00e9llo w\u00f6rld " + randomText(3 * EditTree.READ_CHUNK, 3);
+		EditTree t = EditTree.readFrom(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+				StandardCharsets.UTF_8);
+		assertEquals(text, t.toString());
+		assertEquals(TreeValidator.OK, TreeValidator.kind(t.checkInvariants()));
+	}
+}
@@ -0,0 +1,71 @@
+package editortrees;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one EditTree operation: an edit, a lookup, a bulk
+ * build or copy, or an export. Only operations slower than the threshold are
+ * recorded (1 ms unless the recording's settings say otherwise), so a recording
+ * left on in production shows just the operations that could make the editor
+ * freeze. When no recording asks for the event, start() returns null without
+ * allocating anything, so the operations cost no more than without Flight
+ * Recorder.
+ * 
+ * @author Kunaal and Tulsi
+ */
+@Name("editortrees.Operation")
+@Label("EditTree Operation")
+@Category("Editor Trees")
+@Description("An EditTree operation that took longer than the threshold")
+@Threshold("1 ms")
+@StackTrace(true)
+public class EditTreeEvent extends jdk.jfr.Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Tree Size")
+	int treeSize;
+
+	@Label("Position")
+	@Description("Position the operation was given, or -1 if it doesn't take one")
+	int position;
+
+	@Label("Depth")
+	@Description("Nodes the descent passed through")
+	int depth;
+
+	@Label("Rotations")
+	@Description("Rotations performed, with a double rotation counting as two")
+	int rotations;
+
+	private static final EventType TYPE = EventType.getEventType(EditTreeEvent.class);
+
+	// Begins timing an operation, or returns null if no recording is taking the
+	// event. Escape analysis doesn't reliably remove an unused event, so the hot
+	// paths check first instead of allocating one per edit.
+	static EditTreeEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		EditTreeEvent event = new EditTreeEvent();
+		event.begin();
+		return event;
+	}
+
+	// Fills in the fields and commits. Only call after shouldCommit() said yes.
+	void record(String operation, int treeSize, int position, int depth, int rotations) {
+		this.operation = operation;
+		this.treeSize = treeSize;
+		this.position = position;
+		this.depth = depth;
+		this.rotations = rotations;
+		commit();
+	}
+}
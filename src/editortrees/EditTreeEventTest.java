@@ -0,0 +1,126 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests that EditTree operations and rotations show up in Flight Recorder.
+ */
+public class EditTreeEventTest {
+
+	private static List<RecordedEvent> record(Runnable work) throws IOException {
+		Path file = Files.createTempFile("edittree", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(EditTreeEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(RotationEvent.class);
+			recording.start();
+			work.run();
+			recording.stop();
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> matches = new ArrayList<RecordedEvent>();
+		for (RecordedEvent e : events) {
+			if (e.getEventType().getName().equals(name)) {
+				matches.add(e);
+			}
+		}
+		return matches;
+	}
+
+	@Test
+	public void testOperationAndRotationEvents() throws IOException {
+		List<RecordedEvent> events = record(new Runnable() {
+			@Override
+			public void run() {
+				EditTree t = new EditTree("abcdefg");
+				t.add('x', 0);
+				t.add('y', 0); // single right rotation
+				t.get(3);
+				t.delete(0);
+				t.toString();
+			}
+		});
+		List<RecordedEvent> operations = named(events, "editortrees.Operation");
+		List<String> names = new ArrayList<String>();
+		for (RecordedEvent e : operations) {
+			names.add(e.getString("operation"));
+		}
+		assertTrue(names.toString(), names.contains("build"));
+		assertTrue(names.toString(), names.contains("get"));
+		assertTrue(names.toString(), names.contains("delete"));
+		assertTrue(names.toString(), names.contains("toString"));
+
+		RecordedEvent secondAdd = null;
+		for (RecordedEvent e : operations) {
+			if (e.getString("operation").equals("add") && e.getInt("treeSize") == 9) {
+				secondAdd = e;
+			}
+		}
+		assertEquals(0, secondAdd.getInt("position"));
+		assertEquals(1, secondAdd.getInt("rotations"));
+		assertEquals(4, secondAdd.getInt("depth"));
+
+		List<RecordedEvent> rotations = named(events, "editortrees.Rotation");
+		assertEquals("single right", rotations.get(0).getString("kind"));
+	}
+
+	@Test
+	public void testNoEventWithoutARecording() throws IOException {
+		assertNull(EditTreeEvent.start());
+		record(new Runnable() {
+			@Override
+			public void run() {
+				assertNotNull(EditTreeEvent.start());
+			}
+		});
+		assertNull(EditTreeEvent.start());
+	}
+
+	@Test
+	public void testLookupsDoNotAllocateWithoutARecording() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		EditTree t = new EditTree("the quick brown fox jumps over the lazy dog");
+		int sum = 0;
+		for (int i = 0; i < 200000; i++) { // let the JIT settle first
+			sum += t.get(i % t.size());
+		}
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		int ops = 100000;
+		for (int i = 0; i < ops; i++) {
+			sum += t.get(i % t.size());
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		// an event allocated per get() would take at least 40 bytes each
+		assertTrue("allocated " + allocated + " bytes", allocated < ops * 4L);
+		assertTrue(sum > 0);
+	}
+}
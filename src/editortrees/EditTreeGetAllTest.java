@@ -0,0 +1,128 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that getAll() finds the same characters as get() does one at a time.
+ */
+public class EditTreeGetAllTest {
+
+	@Test
+	public void testSortedPositions() {
+		Random random = new Random(50);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 30000; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		EditTree tree = new EditTree(sb);
+		for (int round = 0; round < 100; round++) {
+			int[] positions = new int[random.nextInt(round % 10 == 0 ? 20000 : 50)];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = random.nextInt(tree.size());
+			}
+			Arrays.sort(positions);
+			char[] out = new char[positions.length];
+			tree.getAll(positions, out);
+			for (int i = 0; i < positions.length; i++) {
+				assertEquals(sb.charAt(positions[i]), out[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testEveryPositionAndRepeats() {
+		String text = "getAll walks the tree once";
+		EditTree tree = new EditTree();
+		for (int i = 0; i < text.length(); i++) {
+			tree.add(text.charAt(i)); // not a perfectly balanced shape
+		}
+		int[] positions = new int[2 * text.length()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = i / 2;
+		}
+		char[] out = new char[positions.length];
+		tree.getAll(positions, out);
+		for (int i = 0; i < positions.length; i++) {
+			assertEquals(text.charAt(i / 2), out[i]);
+		}
+	}
+
+	@Test
+	public void testUnsortedPositionsComeBackInTheirOrder() {
+		EditTree tree = new EditTree("abcdefghij");
+		assertEquals("jab", new String(tree.getAll(new int[] { 9, 0, 1 })));
+		assertEquals("cc", new String(tree.getAll(new int[] { 2, 2 })));
+		assertEquals("", new String(tree.getAll(new int[0])));
+		Random random = new Random(51);
+		int[] positions = new int[500];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = random.nextInt(10);
+		}
+		char[] out = tree.getAll(positions);
+		for (int i = 0; i < positions.length; i++) {
+			assertEquals(tree.get(positions[i]), out[i]);
+		}
+	}
+
+	@Test
+	public void testGetCharsMatchesSubstring() {
+		Random random = new Random(51);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		String text = sb.toString();
+		EditTree tree = new EditTree(text);
+		for (int round = 0; round < 200; round++) {
+			int from = random.nextInt(text.length() + 1);
+			int to = from + random.nextInt(text.length() - from + 1);
+			char[] out = new char[to - from + 3];
+			tree.getChars(from, to, out, 2);
+			assertEquals(text.substring(from, to), new String(out, 2, to - from));
+		}
+		try {
+			tree.getChars(10, 20, new char[15], 6);
+			fail();
+		} catch (IndexOutOfBoundsException expected) {
+			// doesn't fit in out
+		}
+	}
+
+	@Test
+	public void testBadArguments() {
+		EditTree tree = new EditTree("abc");
+		int[][] outside = { { -1, 0 }, { 0, 3 } };
+		for (int[] positions : outside) {
+			try {
+				tree.getAll(positions, new char[2]);
+				fail();
+			} catch (IndexOutOfBoundsException expected) {
+				// nothing to read there
+			}
+			try {
+				tree.getAll(new int[] { positions[1], positions[0] });
+				fail();
+			} catch (IndexOutOfBoundsException expected) {
+				// sorting first doesn't change that
+			}
+		}
+		try {
+			tree.getAll(new int[] { 1, 0 }, new char[2]);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			// not sorted
+		}
+		try {
+			tree.getAll(new int[] { 0, 1 }, new char[1]);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			// no room for the answer
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package editortrees;
+
+/**
+ * Publishes the health of one EditTree: its size and height, how much it
+ * rotates and roughly how much memory it holds. Everything comes from the
+ * tree's EditTreeStats, which the registry turns on and the tree's own thread
+ * keeps up to date, so the monitor never reads nodes that thread is changing.
+ * If the tree's statistics are disabled, the values read -1 until they are
+ * enabled again.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class EditTreeMonitor implements EditTreeMonitorMBean {
+
+	private final String name;
+	private final EditTree tree;
+	private final EditTreeStats stats;
+	private final int registeredRotations; // rotation count when registered
+
+	EditTreeMonitor(String name, EditTree tree) {
+		this.name = name;
+		this.tree = tree;
+		this.stats = tree.enableStatistics();
+		this.registeredRotations = this.stats.totalRotationCount();
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	EditTree getTree() {
+		return this.tree;
+	}
+
+	// rotations since the registry started watching, for its total
+	long rotationsSinceRegistered() {
+		return this.stats.totalRotationCount() - this.registeredRotations;
+	}
+
+	@Override
+	public boolean isStatisticsEnabled() {
+		return this.stats.isEnabled();
+	}
+
+	@Override
+	public int getSize() {
+		return this.stats.isEnabled() ? this.stats.size() : -1;
+	}
+
+	@Override
+	public int getHeight() {
+		return this.stats.isEnabled() ? this.stats.height() : -1;
+	}
+
+	@Override
+	public long getTotalRotationCount() {
+		return this.stats.isEnabled() ? this.stats.totalRotationCount() : -1;
+	}
+
+	@Override
+	public long[] getRotationSample() {
+		return new long[] { System.currentTimeMillis(), getTotalRotationCount() };
+	}
+
+	@Override
+	public long getEstimatedRetainedBytes() {
+		return this.stats.isEnabled() ? this.stats.estimatedRetainedBytes() : -1;
+	}
+
+	@Override
+	public long getAddCount() {
+		return this.operations(EditTreeStats.ADD);
+	}
+
+	@Override
+	public long getDeleteCount() {
+		return this.operations(EditTreeStats.DELETE);
+	}
+
+	@Override
+	public long getGetCount() {
+		return this.operations(EditTreeStats.GET);
+	}
+
+	private long operations(int operation) {
+		return this.stats.isEnabled() ? this.stats.operations(operation) : -1;
+	}
+}
@@ -0,0 +1,38 @@
+package editortrees;
+
+/**
+ * Management interface for one EditTree, published by EditTreeRegistry. Values
+ * are read while the tree may be changing, so each one is a recent value, not
+ * one consistent with the others.
+ * 
+ * While the tree's statistics are disabled, StatisticsEnabled is false and
+ * every other value is -1, since nothing keeps them current.
+ * 
+ * There is no rotation rate, since a rate since the previous read would be
+ * shared by every client reading it. Instead RotationSample is the time in
+ * milliseconds and the rotation count read together; a client gets the rate
+ * over its own interval from two samples.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public interface EditTreeMonitorMBean {
+
+	boolean isStatisticsEnabled();
+
+	int getSize();
+
+	int getHeight();
+
+	long getTotalRotationCount();
+
+	// { System.currentTimeMillis(), total rotation count }
+	long[] getRotationSample();
+
+	long getEstimatedRetainedBytes();
+
+	long getAddCount();
+
+	long getDeleteCount();
+
+	long getGetCount();
+}
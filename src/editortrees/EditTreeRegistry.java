@@ -0,0 +1,170 @@
+package editortrees;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in registry of the EditTrees in this JVM, so tools like jconsole or an
+ * in-process health endpoint can see which documents are huge or degenerate.
+ * The registry itself is published as one aggregate MBean. With
+ * publishEachTree, every registered tree also gets its own MBean named
+ * domain:type=EditTree,name=... on the platform MBean server.
+ * 
+ * Trees are held until they are unregistered, so unregister a document's tree
+ * when the document closes.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class EditTreeRegistry implements EditTreeRegistryMBean {
+
+	private final String domain;
+	private final boolean publishEachTree;
+	private final MBeanServer server;
+	private final ObjectName objectName;
+	private final ConcurrentHashMap<String, EditTreeMonitor> monitors = new ConcurrentHashMap<String, EditTreeMonitor>();
+
+	// rotations of trees no longer registered, so the total never goes down
+	private long unregisteredRotations;
+
+	/**
+	 * Creates the registry and publishes its aggregate MBean as
+	 * domain:type=EditTreeRegistry.
+	 * 
+	 * @param domain          JMX domain for this registry's MBeans
+	 * @param publishEachTree whether each tree also gets its own MBean
+	 * @throws JMException if the name is taken or invalid
+	 */
+	public EditTreeRegistry(String domain, boolean publishEachTree) throws JMException {
+		this.domain = domain;
+		this.publishEachTree = publishEachTree;
+		this.server = ManagementFactory.getPlatformMBeanServer();
+		this.objectName = new ObjectName(domain + ":type=EditTreeRegistry");
+		this.server.registerMBean(this, this.objectName);
+	}
+
+	/**
+	 * Starts monitoring tree under the given name. This turns on the tree's
+	 * statistics.
+	 * 
+	 * @return the monitor for the tree
+	 * @throws JMException if the name is already registered
+	 */
+	public EditTreeMonitor register(String name, EditTree tree) throws JMException {
+		EditTreeMonitor monitor = new EditTreeMonitor(name, tree);
+		if (this.monitors.putIfAbsent(name, monitor) != null) {
+			throw new JMException("a tree named " + name + " is already registered");
+		}
+		if (this.publishEachTree) {
+			try {
+				this.server.registerMBean(monitor, treeName(name));
+			} catch (JMException e) {
+				this.monitors.remove(name);
+				throw e;
+			}
+		}
+		return monitor;
+	}
+
+	/**
+	 * Stops monitoring the tree registered under name. Its statistics stay on.
+	 */
+	public void unregister(String name) throws JMException {
+		EditTreeMonitor monitor;
+		synchronized (this) {
+			monitor = this.monitors.remove(name);
+			if (monitor == null) {
+				return;
+			}
+			this.unregisteredRotations += monitor.rotationsSinceRegistered();
+		}
+		if (this.publishEachTree) {
+			this.server.unregisterMBean(treeName(name));
+		}
+	}
+
+	/**
+	 * Unregisters every tree and the registry's own MBean.
+	 */
+	public void close() throws JMException {
+		for (String name : new ArrayList<String>(this.monitors.keySet())) {
+			unregister(name);
+		}
+		this.server.unregisterMBean(this.objectName);
+	}
+
+	/**
+	 * @return the monitors of all registered trees, for an in-process health check
+	 */
+	public Collection<EditTreeMonitor> monitors() {
+		return this.monitors.values();
+	}
+
+	public ObjectName getObjectName() {
+		return this.objectName;
+	}
+
+	ObjectName treeName(String name) throws JMException {
+		return new ObjectName(this.domain + ":type=EditTree,name=" + ObjectName.quote(name));
+	}
+
+	@Override
+	public int getTreeCount() {
+		return this.monitors.size();
+	}
+
+	@Override
+	public long getTotalSize() {
+		long total = 0;
+		for (EditTreeMonitor m : this.monitors.values()) {
+			total += Math.max(m.getSize(), 0);
+		}
+		return total;
+	}
+
+	@Override
+	public int getMaxHeight() {
+		int max = -1;
+		for (EditTreeMonitor m : this.monitors.values()) {
+			max = Math.max(max, m.getHeight());
+		}
+		return max;
+	}
+
+	@Override
+	public String getLargestTree() {
+		String largest = null;
+		int size = -1;
+		for (EditTreeMonitor m : this.monitors.values()) {
+			int s = m.getSize();
+			if (s > size) {
+				size = s;
+				largest = m.getName();
+			}
+		}
+		return largest;
+	}
+
+	@Override
+	public long getTotalEstimatedRetainedBytes() {
+		long total = 0;
+		for (EditTreeMonitor m : this.monitors.values()) {
+			total += Math.max(m.getEstimatedRetainedBytes(), 0);
+		}
+		return total;
+	}
+
+	@Override
+	public synchronized long[] getRotationSample() {
+		long rotations = this.unregisteredRotations;
+		for (EditTreeMonitor m : this.monitors.values()) {
+			rotations += m.rotationsSinceRegistered();
+		}
+		return new long[] { System.currentTimeMillis(), rotations };
+	}
+}
@@ -0,0 +1,25 @@
+package editortrees;
+
+/**
+ * Management interface summing up every tree in an EditTreeRegistry.
+ * RotationSample works like the one in EditTreeMonitorMBean. Trees whose
+ * statistics are disabled are counted in TreeCount but left out of the rest.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public interface EditTreeRegistryMBean {
+
+	int getTreeCount();
+
+	long getTotalSize();
+
+	int getMaxHeight();
+
+	String getLargestTree();
+
+	long getTotalEstimatedRetainedBytes();
+
+	// { System.currentTimeMillis(), rotations in all trees since each was
+	// registered, including trees unregistered since }
+	long[] getRotationSample();
+}
@@ -0,0 +1,140 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+/**
+ * Tests for publishing tree health over JMX.
+ */
+public class EditTreeRegistryTest {
+
+	@Test
+	public void testPerTreeAndAggregateAttributes() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		EditTreeRegistry registry = new EditTreeRegistry("editortrees.test1", true);
+		try {
+			EditTree small = new EditTree("abc");
+			EditTree big = new EditTree();
+			registry.register("small.txt", small);
+			registry.register("big.txt", big);
+			for (int i = 0; i < 100; i++) {
+				big.add('x');
+			}
+			big.get(5);
+			big.delete(0);
+
+			assertEquals(99, server.getAttribute(registry.treeName("big.txt"), "Size"));
+			assertEquals(big.fastHeight(), server.getAttribute(registry.treeName("big.txt"), "Height"));
+			assertEquals(100L, server.getAttribute(registry.treeName("big.txt"), "AddCount"));
+			assertEquals(1L, server.getAttribute(registry.treeName("big.txt"), "DeleteCount"));
+			assertEquals(1L, server.getAttribute(registry.treeName("big.txt"), "GetCount"));
+			assertEquals((long) big.totalRotationCount(),
+					server.getAttribute(registry.treeName("big.txt"), "TotalRotationCount"));
+			assertEquals(99L * Node.ESTIMATED_BYTES,
+					server.getAttribute(registry.treeName("big.txt"), "EstimatedRetainedBytes"));
+
+			assertEquals(2, server.getAttribute(registry.getObjectName(), "TreeCount"));
+			assertEquals(102L, server.getAttribute(registry.getObjectName(), "TotalSize"));
+			assertEquals("big.txt", server.getAttribute(registry.getObjectName(), "LargestTree"));
+			long[] sample = (long[]) server.getAttribute(registry.getObjectName(), "RotationSample");
+			assertEquals(big.totalRotationCount(), sample[1]);
+			// reading the sample doesn't start a new window for the next reader
+			assertEquals(sample[1], registry.getRotationSample()[1]);
+
+			registry.unregister("big.txt");
+			assertFalse(server.isRegistered(registry.treeName("big.txt")));
+			assertEquals(1, registry.getTreeCount());
+			// the unregistered tree's rotations stay in the total
+			assertEquals(sample[1], registry.getRotationSample()[1]);
+		} finally {
+			registry.close();
+		}
+		assertFalse(server.isRegistered(registry.getObjectName()));
+	}
+
+	@Test
+	public void testShapeIsPublishedByEveryEdit() throws JMException {
+		EditTreeRegistry registry = new EditTreeRegistry("editortrees.test4", false);
+		try {
+			EditTree tree = new EditTree("the quick brown fox");
+			EditTreeMonitor monitor = registry.register("fox", tree);
+			assertEquals(19, monitor.getSize());
+			assertEquals(tree.fastHeight(), monitor.getHeight());
+			tree.replace(4, 5, "slow and steady");
+			assertEquals(tree.size(), monitor.getSize());
+			tree.replaceAll("o", "0");
+			assertEquals(tree.size(), monitor.getSize());
+			EditBatch batch = new EditBatch();
+			batch.delete(0, 4);
+			batch.insert(tree.size(), " jumps");
+			tree.applyBatch(batch);
+			assertEquals(tree.size(), monitor.getSize());
+			assertEquals(tree.fastHeight(), monitor.getHeight());
+			assertEquals(tree.totalRotationCount(), monitor.getTotalRotationCount());
+		} finally {
+			registry.close();
+		}
+	}
+
+	@Test
+	public void testDisabledStatisticsAreReportedAsSuch() throws JMException {
+		EditTreeRegistry registry = new EditTreeRegistry("editortrees.test5", false);
+		try {
+			EditTree tree = new EditTree("abc");
+			EditTreeMonitor monitor = registry.register("abc", tree);
+			registry.register("other", new EditTree("hello"));
+			tree.add('d');
+			assertTrue(monitor.isStatisticsEnabled());
+			assertEquals(1, monitor.getAddCount());
+			tree.disableStatistics();
+			tree.add('e');
+			assertFalse(monitor.isStatisticsEnabled());
+			assertEquals(-1, monitor.getSize());
+			assertEquals(-1, monitor.getAddCount());
+			assertEquals(-1, monitor.getRotationSample()[1]);
+			assertEquals(5, registry.getTotalSize());
+			assertEquals(5L * Node.ESTIMATED_BYTES, registry.getTotalEstimatedRetainedBytes());
+			// enabling them again carries on with the same counters
+			assertSame(monitor.getTree().enableStatistics(), tree.getStatistics());
+			tree.add('f');
+			assertTrue(monitor.isStatisticsEnabled());
+			assertEquals(6, monitor.getSize());
+			assertEquals(2, monitor.getAddCount());
+			assertEquals(11, registry.getTotalSize());
+		} finally {
+			registry.close();
+		}
+	}
+
+	@Test
+	public void testAggregateOnly() throws JMException {
+		EditTreeRegistry registry = new EditTreeRegistry("editortrees.test2", false);
+		try {
+			registry.register("a", new EditTree("hello"));
+			assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(registry.treeName("a")));
+			assertEquals(5, registry.getTotalSize());
+		} finally {
+			registry.close();
+		}
+	}
+
+	@Test(expected = JMException.class)
+	public void testDuplicateName() throws JMException {
+		EditTreeRegistry registry = new EditTreeRegistry("editortrees.test3", false);
+		try {
+			registry.register("a", new EditTree());
+			registry.register("a", new EditTree());
+		} finally {
+			registry.close();
+		}
+	}
+}
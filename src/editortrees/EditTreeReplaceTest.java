@@ -0,0 +1,231 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests replace() against StringBuilder.replace(), and replaceAll() against
+ * String.replace() and Matcher.replaceAll(), on both the splicing and the
+ * rebuilding path.
+ */
+public class EditTreeReplaceTest {
+
+	private static void assertValid(EditTree tree) {
+		assertEquals(TreeValidator.OK, TreeValidator.kind(tree.checkInvariants()));
+	}
+
+	// Counts what String.replace() would replace.
+	private static int occurrences(String text, String target) {
+		int count = 0;
+		for (int i = text.indexOf(target); i >= 0; i = text.indexOf(target, i + target.length())) {
+			count++;
+		}
+		return count;
+	}
+
+	private static String randomText(Random random, int length, String alphabet) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testReplaceRangesLikeStringBuilder() {
+		Random random = new Random(50);
+		StringBuilder expected = new StringBuilder(randomText(random, 3000, "abcdef"));
+		EditTree tree = new EditTree(expected);
+		tree.enableNodeRecycling(64);
+		for (int i = 0; i < 2000; i++) {
+			int pos = random.nextInt(expected.length() + 1);
+			int length = random.nextInt(Math.min(40, expected.length() - pos) + 1);
+			String text = randomText(random, random.nextInt(40), "xyz");
+			expected.replace(pos, pos + length, text);
+			tree.replace(pos, length, text);
+			assertEquals(expected.length(), tree.size());
+			if (i % 100 == 0) {
+				assertEquals(expected.toString(), tree.toString());
+				assertValid(tree);
+			}
+		}
+		assertEquals(expected.toString(), tree.toString());
+		assertValid(tree);
+	}
+
+	@Test
+	public void testReplaceAtTheEnds() {
+		EditTree tree = new EditTree();
+		tree.replace(0, 0, "middle");
+		tree.replace(0, 0, "a");
+		tree.replace(tree.size(), 0, "z");
+		assertEquals("amiddlez", tree.toString());
+		tree.replace(0, tree.size(), "all");
+		assertEquals("all", tree.toString());
+		tree.replace(0, 3, "");
+		assertEquals("", tree.toString());
+		assertEquals(0, tree.size());
+		assertValid(tree);
+	}
+
+	@Test
+	public void testReplaceIsOneEdit() {
+		EditTree tree = new EditTree("select this word");
+		StringBuilder heard = new StringBuilder();
+		tree.addEditListener(new EditListener() {
+			@Override
+			public void inserted(int pos, char ch) {
+				heard.append("inserted ");
+			}
+
+			@Override
+			public void deleted(int pos, int length) {
+				heard.append("deleted ");
+			}
+
+			@Override
+			public void replaced(int pos, int length, CharSequence text) {
+				heard.append("replaced " + pos + " " + length + " " + text);
+			}
+		});
+		tree.replace(7, 4, "that");
+		assertEquals("replaced 7 4 that", heard.toString());
+		assertEquals("select that word", tree.toString());
+	}
+
+	@Test
+	public void testReplaceChecksItsRange() {
+		EditTree tree = new EditTree("abc");
+		int[][] bad = { { -1, 0 }, { 0, -1 }, { 4, 0 }, { 2, 2 }, { 1, Integer.MAX_VALUE } };
+		for (int[] range : bad) {
+			try {
+				tree.replace(range[0], range[1], "x");
+				fail();
+			} catch (IndexOutOfBoundsException expected) {
+				// the tree is left alone
+			}
+		}
+		assertEquals("abc", tree.toString());
+	}
+
+	@Test
+	public void testReplacesLikeString() {
+		String[][] cases = { { "the cat sat on the mat", "the", "a" }, { "aaaaa", "aa", "b" },
+				{ "abcabc", "abc", "" }, { "abc", "abc", "xyz" }, { "abc", "d", "e" }, { "a.b.c", ".", "::" },
+				{ "", "a", "b" }, { "xax", "a", "aaa" } };
+		for (String[] c : cases) {
+			EditTree tree = new EditTree(c[0]);
+			int replaced = tree.replaceAll(c[1], c[2]);
+			assertEquals(c[0].replace(c[1], c[2]), tree.toString());
+			assertEquals(occurrences(c[0], c[1]), replaced);
+			assertEquals(c[0].replace(c[1], c[2]).length(), tree.size());
+			assertValid(tree);
+		}
+	}
+
+	@Test
+	public void testSparseAndDenseMatches() {
+		Random random = new Random(47);
+		for (int round = 0; round < 40; round++) {
+			int length = random.nextInt(20000);
+			String text = randomText(random, length, round % 2 == 0 ? "abcdefghij" : "ab");
+			String target = randomText(random, 1 + random.nextInt(4), "ab");
+			String replacement = randomText(random, random.nextInt(6), "xyz");
+			EditTree tree = new EditTree(text);
+			assertEquals(occurrences(text, target), tree.replaceAll(target, replacement));
+			assertEquals(text.replace(target, replacement), tree.toString());
+			assertValid(tree);
+		}
+	}
+
+	@Test
+	public void testSplicesAFewMatchesInALargeTree() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			sb.append((char) ('a' + i % 20));
+		}
+		sb.replace(1000, 1003, "XYZ").replace(150000, 150003, "XYZ");
+		String text = sb.toString();
+		EditTree tree = new EditTree(text);
+		tree.enableNodeRecycling(100);
+		assertEquals(2, tree.replaceAll("XYZ", "0123456789"));
+		assertEquals(text.replace("XYZ", "0123456789"), tree.toString());
+		assertValid(tree);
+		// the matched nodes went to the pool
+		assertEquals(6, tree.getNodePool().retained());
+		assertEquals(2, tree.replaceAll("0123456789", ""));
+		assertEquals(text.replace("XYZ", ""), tree.toString());
+		assertValid(tree);
+	}
+
+	@Test
+	public void testRegexReplacesLikeMatcher() {
+		String text = "x = 1; y = 22; zz = 333;";
+		String[][] cases = { { "(\\w+) = (\\d+)", "$2 = $1" }, { "\\d", "#" }, { "q*", "-" }, { ";\\s*", "\n" },
+				{ "(?<name>[a-z]+)", "<${name}>" }, { "nothing", "x" } };
+		for (String[] c : cases) {
+			Pattern pattern = Pattern.compile(c[0]);
+			EditTree tree = new EditTree(text);
+			tree.replaceAll(pattern, c[1]);
+			assertEquals(pattern.matcher(text).replaceAll(c[1]), tree.toString());
+			assertValid(tree);
+		}
+	}
+
+	@Test
+	public void testRegexCountsMatches() {
+		EditTree tree = new EditTree("a1b22c333");
+		assertEquals(3, tree.replaceAll(Pattern.compile("\\d+"), ""));
+		assertEquals("abc", tree.toString());
+	}
+
+	@Test
+	public void testListenersSeeEachReplacement() {
+		Random random = new Random(48);
+		for (int round = 0; round < 20; round++) {
+			String text = randomText(random, random.nextInt(5000), "abcd");
+			EditTree tree = new EditTree(text);
+			// replaying the reported edits on a plain copy must give the same text
+			EditTree copy = new EditTree(text);
+			tree.addEditListener(new EditListener() {
+				@Override
+				public void inserted(int pos, char ch) {
+					copy.add(ch, pos);
+				}
+
+				@Override
+				public void deleted(int pos, int length) {
+					for (int i = 0; i < length; i++) {
+						copy.delete(pos);
+					}
+				}
+			});
+			tree.replaceAll("ab", round % 3 == 0 ? "" : "xyz");
+			assertEquals(tree.toString(), copy.toString());
+		}
+	}
+
+	@Test
+	public void testRegexEmptyMatchesInsertEverywhere() {
+		EditTree tree = new EditTree("abc");
+		Matcher matcher = Pattern.compile("").matcher("abc");
+		assertEquals(4, tree.replaceAll(Pattern.compile(""), "-"));
+		assertEquals(matcher.replaceAll("-"), tree.toString());
+	}
+
+	@Test
+	public void testEmptyTargetIsRejected() {
+		try {
+			new EditTree("abc").replaceAll("", "x");
+			fail();
+		} catch (IllegalArgumentException expected) {
+			// String.replace() would insert everywhere; use a regex for that
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests indexOf() and lastIndexOf() against String, and that the subtree
+ * summaries they rely on survive every kind of edit.
+ */
+public class EditTreeSearchTest {
+
+	private static final String ALPHABET = "abcXYZ019 \n(){}\"'\u00e9\u4e2d";
+
+	private static void assertSearchesMatch(String expected, EditTree t, Random random) {
+		assertEquals(TreeValidator.describe(t.checkInvariants()), TreeValidator.OK,
+				TreeValidator.kind(t.checkInvariants()));
+		for (int i = 0; i < 20; i++) {
+			char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			int from = random.nextInt(expected.length() + 4) - 2;
+			assertEquals(expected.indexOf(c, from), t.indexOf(c, from));
+			assertEquals(expected.lastIndexOf(c, from), t.lastIndexOf(c, from));
+		}
+		for (int i = 0; i < ALPHABET.length(); i++) {
+			char c = ALPHABET.charAt(i);
+			assertEquals(expected.indexOf(c), t.indexOf(c));
+			assertEquals(expected.lastIndexOf(c), t.lastIndexOf(c));
+		}
+	}
+
+	@Test
+	public void testEmptyTree() {
+		EditTree t = new EditTree();
+		assertEquals(-1, t.indexOf('a'));
+		assertEquals(-1, t.lastIndexOf('a'));
+		assertEquals(-1, t.indexOf('a', -5));
+		assertEquals(-1, t.lastIndexOf('a', 5));
+	}
+
+	@Test
+	public void testFindsEveryOccurrence() {
+		String s = "int f(int x) {\n\treturn g(x[0], 'y');\n}\n";
+		EditTree t = new EditTree(s, Brackets.DEFAULT);
+		EditTree plain = new EditTree(s);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			assertEquals(s.indexOf(c, i), t.indexOf(c, i));
+			assertEquals(s.lastIndexOf(c, i), t.lastIndexOf(c, i));
+			assertEquals(s.indexOf(c, i), plain.indexOf(c, i));
+			assertEquals(s.lastIndexOf(c, i), plain.lastIndexOf(c, i));
+		}
+		// walking forward through the line breaks
+		int count = 0;
+		for (int pos = t.indexOf('\n'); pos >= 0; pos = t.indexOf('\n', pos + 1)) {
+			assertEquals('\n', t.get(pos));
+			count++;
+		}
+		assertEquals(3, count);
+	}
+
+	@Test
+	public void testCaseFoldedLettersAreStillExact() {
+		EditTree t = new EditTree("aaaaAaaaa", Brackets.DEFAULT);
+		assertEquals(4, t.indexOf('A'));
+		assertEquals(-1, t.indexOf('A', 5));
+		assertEquals(4, t.lastIndexOf('A'));
+		assertEquals(8, t.lastIndexOf('a'));
+	}
+
+	@Test
+	public void testRandomEdits() {
+		Random random = new Random(43);
+		EditTree t = new EditTree();
+		t.enableSummaries(Brackets.DEFAULT);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			int choice = random.nextInt(10);
+			char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			if (choice < 3 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else if (choice < 6) {
+				int pos = random.nextInt(expected.length() + 1);
+				t.add(c, pos);
+				expected.insert(pos, c);
+			} else {
+				t.add(c); // through the right spine
+				expected.append(c);
+			}
+			if (i % 500 == 0) {
+				assertSearchesMatch(expected.toString(), t, random);
+			}
+		}
+		assertSearchesMatch(expected.toString(), t, random);
+	}
+
+	@Test
+	public void testBulkBuiltTrees() {
+		Random random = new Random(44);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 300000; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length() - 2)));
+		}
+		sb.setCharAt(123456, '\u00e9');
+		String s = sb.toString();
+		EditTree t = new EditTree(s, Brackets.DEFAULT);
+		assertSearchesMatch(s, t, random);
+		EditTree copy = new EditTree(t);
+		assertSearchesMatch(s, copy, random);
+		t.append("{\u4e2d}");
+		assertSearchesMatch(s + "{\u4e2d}", t, random);
+	}
+
+	@Test
+	public void testRecycledNodes() {
+		Random random = new Random(45);
+		EditTree t = new EditTree();
+		t.enableSummaries(Brackets.DEFAULT);
+		t.enableNodeRecycling(64);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			if (random.nextBoolean() && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				t.delete(pos);
+				expected.deleteCharAt(pos);
+			} else {
+				char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+				int pos = random.nextInt(expected.length() + 1);
+				t.add(c, pos);
+				expected.insert(pos, c);
+			}
+		}
+		assertSearchesMatch(expected.toString(), t, random);
+	}
+}
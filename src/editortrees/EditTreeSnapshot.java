@@ -0,0 +1,350 @@
+package editortrees;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Binary save and load that keeps a tree's exact shape. Reloading text through
+ * new EditTree(String) rebuilds a different tree and loses the rotation count;
+ * a snapshot comes back with the same nodes, balance codes and
+ * totalRotationCount(), in one linear pass and without any rebalancing.
+ * 
+ * Layout, big-endian:
+ * 
+ * magic "ETS2", size, rotation count, journal generation, then the nodes in
+ * pre-order, then a CRC32 of everything before it. Nodes come in pairs: one header byte with a
+ * nibble per node (balance code in bits 0-1, has-left in bit 2, has-right in
+ * bit 3), followed by the pair's two chars. Ranks aren't stored; they are the
+ * left subtree sizes, which the loader counts as it goes. The generation is
+ * 0 unless EditJournal.checkpoint() wrote the snapshot; recovery uses it to
+ * tell journal frames written before the snapshot from those written after.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class EditTreeSnapshot {
+
+	static final int MAGIC = 0x45545332; // "ETS2"
+	private static final int HEADER_BYTES = 16;
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private static final int HAS_LEFT = 4;
+	private static final int HAS_RIGHT = 8;
+	private static final Node.Code[] CODES = Node.Code.values();
+
+	private EditTreeSnapshot() {
+	}
+
+	/**
+	 * Saves tree to file, replacing whatever is there, and forces it to disk.
+	 * The snapshot is written to file.tmp first and then moved over file, so a
+	 * crash leaves either the old snapshot or the new one, never a mix.
+	 */
+	public static void write(EditTree tree, Path file) throws IOException {
+		write(tree, file, 0);
+	}
+
+	static void write(EditTree tree, Path file, int generation) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			write(tree, channel, generation);
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory(file);
+	}
+
+	// Forces the directory holding file, so that a file just moved into it is
+	// still there after a crash. Windows can't open a directory, and NTFS
+	// journals the rename itself.
+	private static void forceDirectory(Path file) throws IOException {
+		if (System.getProperty("os.name").startsWith("Windows")) {
+			return;
+		}
+		FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ);
+		try {
+			directory.force(true);
+		} finally {
+			directory.close();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of tree to any channel, e.g. a socket.
+	 */
+	public static void write(EditTree tree, WritableByteChannel channel) throws IOException {
+		write(tree, channel, 0);
+	}
+
+	private static void write(EditTree tree, WritableByteChannel channel, int generation) throws IOException {
+		Writer writer = new Writer(channel);
+		writer.buffer.putInt(MAGIC);
+		writer.buffer.putInt(tree.size());
+		writer.buffer.putInt(tree.totalRotationCount());
+		writer.buffer.putInt(generation);
+		// pre-order with an explicit stack; the tree is shallow but this keeps the
+		// writer independent of how it was built
+		Node[] stack = new Node[64];
+		int top = -1;
+		if (tree.root != Node.NULL_NODE) {
+			stack[++top] = tree.root;
+		}
+		while (top >= 0) {
+			Node n = stack[top--];
+			writer.node(n);
+			if (top + 2 >= stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (n.hasRight()) {
+				stack[++top] = n.right;
+			}
+			if (n.hasLeft()) {
+				stack[++top] = n.left;
+			}
+		}
+		writer.finish();
+	}
+
+	/**
+	 * Loads a tree saved by write().
+	 * 
+	 * @throws IOException if the file can't be read, isn't a snapshot, or fails
+	 *                     its checksum
+	 */
+	public static EditTree read(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return read(channel);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Loads a tree from any channel positioned at the start of a snapshot.
+	 */
+	public static EditTree read(ReadableByteChannel channel) throws IOException {
+		Reader reader = new Reader(channel);
+		if (reader.getInt() != MAGIC) {
+			throw new IOException("not an EditTree snapshot");
+		}
+		int size = reader.getInt();
+		int rotations = reader.getInt();
+		reader.getInt(); // generation, see generation()
+		if (size < 0) {
+			throw new IOException("corrupt snapshot: negative size");
+		}
+		reader.maxDepth = TreeValidator.maxHeight(size) + 1;
+		Node root = Node.NULL_NODE;
+		if (size > 0) {
+			root = reader.subtree(size, 1);
+		}
+		if (reader.count != size) {
+			throw new IOException("corrupt snapshot: expected " + size + " nodes, found " + reader.count);
+		}
+		reader.checkTrailer();
+		return new EditTree(root, size, rotations);
+	}
+
+	// Reads just the journal generation from the header of a snapshot that
+	// read() has already checked.
+	static int generation(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) {
+					throw new IOException("snapshot is truncated");
+				}
+			}
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("not an EditTree snapshot");
+			}
+			return header.getInt(12);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Ships a saved snapshot to another process without copying it through this
+	 * one, using FileChannel.transferTo.
+	 * 
+	 * @return number of bytes sent
+	 */
+	public static long transferTo(Path file, WritableByteChannel target) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long sent = 0;
+			while (sent < size) {
+				sent += channel.transferTo(sent, size - sent, target);
+			}
+			return sent;
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static int nibble(Node n) {
+		int bits = n.balance.ordinal();
+		if (n.hasLeft()) {
+			bits |= HAS_LEFT;
+		}
+		if (n.hasRight()) {
+			bits |= HAS_RIGHT;
+		}
+		return bits;
+	}
+
+	private static class Writer {
+		final WritableByteChannel channel;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		final CRC32 crc = new CRC32();
+		Node pending; // first node of a pair, held until its partner is known
+
+		Writer(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		void node(Node n) throws IOException {
+			if (this.pending == null) {
+				this.pending = n;
+				return;
+			}
+			room(5);
+			this.buffer.put((byte) (nibble(this.pending) | nibble(n) << 4));
+			this.buffer.putChar(this.pending.data);
+			this.buffer.putChar(n.data);
+			this.pending = null;
+		}
+
+		void finish() throws IOException {
+			if (this.pending != null) {
+				room(3);
+				this.buffer.put((byte) nibble(this.pending));
+				this.buffer.putChar(this.pending.data);
+			}
+			flush();
+			this.buffer.putInt((int) this.crc.getValue());
+			flush();
+		}
+
+		private void room(int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			this.crc.update(this.buffer.duplicate());
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+	}
+
+	private static class Reader {
+		final ReadableByteChannel channel;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		final CRC32 crc = new CRC32();
+		int checkedUpTo; // buffer position the CRC has reached
+		int count; // nodes read so far
+		int maxDepth;
+		int pendingNibble;
+
+		Reader(ReadableByteChannel channel) {
+			this.channel = channel;
+			this.buffer.flip();
+		}
+
+		// Reads the subtree whose root is next in pre-order. Its rank is the number
+		// of nodes its left subtree read.
+		Node subtree(int size, int depth) throws IOException {
+			if (depth > this.maxDepth || this.count >= size) {
+				throw new IOException("corrupt snapshot: structure doesn't fit the size");
+			}
+			int bits;
+			char data;
+			if ((this.count & 1) == 0) {
+				need(this.count + 1 < size ? 5 : 3);
+				int header = this.buffer.get() & 0xFF;
+				bits = header & 0xF;
+				this.pendingNibble = header >>> 4;
+			} else {
+				bits = this.pendingNibble;
+			}
+			data = this.buffer.getChar();
+			this.count++;
+			if ((bits & 3) > 2) {
+				throw new IOException("corrupt snapshot: bad balance code");
+			}
+			Node n = new Node(data);
+			n.balance = CODES[bits & 3];
+			int before = this.count;
+			if ((bits & HAS_LEFT) != 0) {
+				n.left = subtree(size, depth + 1);
+			}
+			n.rank = this.count - before;
+			if ((bits & HAS_RIGHT) != 0) {
+				n.right = subtree(size, depth + 1);
+			}
+			n.updateSummary();
+			return n;
+		}
+
+		int getInt() throws IOException {
+			need(4);
+			return this.buffer.getInt();
+		}
+
+		void checkTrailer() throws IOException {
+			// the checksum covers everything before the trailer
+			long expected = checksum();
+			need(4);
+			if (this.buffer.getInt() != (int) expected) {
+				throw new IOException("snapshot checksum mismatch");
+			}
+		}
+
+		// Folds the bytes consumed since the last call into the CRC and returns it.
+		private long checksum() {
+			ByteBuffer consumed = this.buffer.duplicate();
+			consumed.limit(consumed.position());
+			consumed.position(this.checkedUpTo);
+			this.crc.update(consumed);
+			this.checkedUpTo = this.buffer.position();
+			return this.crc.getValue();
+		}
+
+		// Makes sure at least bytes are buffered, refilling from the channel.
+		private void need(int bytes) throws IOException {
+			if (this.buffer.remaining() >= bytes) {
+				return;
+			}
+			checksum();
+			this.buffer.compact();
+			while (this.buffer.position() < bytes) {
+				if (this.channel.read(this.buffer) < 0) {
+					throw new IOException("snapshot is truncated");
+				}
+			}
+			this.buffer.flip();
+			this.checkedUpTo = 0;
+		}
+	}
+}
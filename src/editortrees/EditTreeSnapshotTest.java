@@ -0,0 +1,132 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for saving and loading trees with their shape intact.
+ */
+public class EditTreeSnapshotTest {
+
+	private static EditTree randomTree(int size, long seed) {
+		Random random = new Random(seed);
+		EditTree t = new EditTree();
+		for (int i = 0; i < size; i++) {
+			t.add((char) random.nextInt(0x10000), random.nextInt(i + 1));
+		}
+		for (int i = 0; i < size / 4; i++) {
+			t.delete(random.nextInt(t.size()));
+		}
+		return t;
+	}
+
+	private static void assertSameTree(EditTree expected, EditTree actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.toDebugString(), actual.toDebugString());
+		assertEquals(expected.totalRotationCount(), actual.totalRotationCount());
+		assertEquals(TreeValidator.OK, TreeValidator.kind(actual.checkInvariants()));
+	}
+
+	@Test
+	public void testRoundTripKeepsShape() throws IOException {
+		Path file = Files.createTempFile("edittree", ".ets");
+		try {
+			for (int size : new int[] { 0, 1, 2, 3, 100, 30001 }) {
+				EditTree t = randomTree(size, size);
+				EditTreeSnapshot.write(t, file);
+				assertSameTree(t, EditTreeSnapshot.read(file));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testWriteReplacesTheFileWhole() throws IOException {
+		Path dir = Files.createTempDirectory("snapshots");
+		Path file = dir.resolve("doc.ets");
+		try {
+			EditTreeSnapshot.write(randomTree(5000, 31), file);
+			EditTree smaller = randomTree(10, 32);
+			EditTreeSnapshot.write(smaller, file);
+			assertSameTree(smaller, EditTreeSnapshot.read(file));
+			// written next to it and moved over it, with nothing left behind
+			assertEquals(1, dir.toFile().list().length);
+		} finally {
+			Files.deleteIfExists(file);
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void testTransferTo() throws IOException {
+		Path file = Files.createTempFile("edittree", ".ets");
+		Path copy = Files.createTempFile("edittree", ".ets");
+		try {
+			EditTree t = randomTree(5000, 9);
+			EditTreeSnapshot.write(t, file);
+			FileChannel target = FileChannel.open(copy, StandardOpenOption.WRITE);
+			try {
+				assertEquals(Files.size(file), EditTreeSnapshot.transferTo(file, target));
+			} finally {
+				target.close();
+			}
+			assertSameTree(t, EditTreeSnapshot.read(copy));
+		} finally {
+			Files.delete(file);
+			Files.delete(copy);
+		}
+	}
+
+	@Test
+	public void testCorruptionIsDetected() throws IOException {
+		Path file = Files.createTempFile("edittree", ".ets");
+		try {
+			EditTreeSnapshot.write(randomTree(1000, 10), file);
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				// flip one bit of a character in the middle
+				ByteBuffer b = ByteBuffer.allocate(1);
+				channel.read(b, 1001);
+				b.put(0, (byte) (b.get(0) ^ 1));
+				b.rewind();
+				channel.write(b, 1001);
+			} finally {
+				channel.close();
+			}
+			try {
+				EditTreeSnapshot.read(file);
+				fail("expected a checksum failure");
+			} catch (IOException e) {
+				assertEquals("snapshot checksum mismatch", e.getMessage());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFile() throws IOException {
+		Path file = Files.createTempFile("edittree", ".ets");
+		try {
+			EditTreeSnapshot.write(randomTree(1000, 11), file);
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			channel.truncate(channel.size() / 2);
+			channel.close();
+			EditTreeSnapshot.read(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
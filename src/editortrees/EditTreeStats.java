@@ -0,0 +1,241 @@
+package editortrees;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Operation counters for one EditTree: how many adds, deletes and gets it has
+ * done, which rotations each kind of edit caused, and how deep each operation
+ * had to descend. A tree only has one of these after enableStatistics(), so a
+ * tree that doesn't ask for statistics pays nothing for them.
+ * 
+ * The tree's thread is the only writer. Each counter is published with an
+ * ordered write, so snapshot() can be called from any thread, for example a
+ * monitoring thread graphing tree health. A snapshot taken while the tree is
+ * being edited may be one operation behind on some counters. The tree's size,
+ * height, rotation count and node size are published the same way after every
+ * edit, so such a thread never has to walk nodes the tree's thread is changing.
+ * While the tree's statistics are disabled nothing is updated, and isEnabled()
+ * says so.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class EditTreeStats {
+
+	// operations
+	public static final int ADD = 0;
+	public static final int DELETE = 1;
+	public static final int GET = 2;
+	static final int OPERATIONS = 3;
+
+	// rotation kinds
+	public static final int SINGLE_LEFT = 0;
+	public static final int SINGLE_RIGHT = 1;
+	public static final int DOUBLE_LEFT = 2;
+	public static final int DOUBLE_RIGHT = 3;
+	static final int ROTATION_KINDS = 4;
+
+	// depth histogram bucket d counts operations that passed through d nodes; the
+	// last bucket also takes anything deeper
+	public static final int DEPTH_BUCKETS = 64;
+
+	// entries of shape
+	private static final int SIZE = 0;
+	private static final int HEIGHT = 1;
+	private static final int TOTAL_ROTATIONS = 2;
+	private static final int NODE_BYTES = 3;
+
+	private final AtomicLongArray operations = new AtomicLongArray(OPERATIONS);
+	private final AtomicLongArray rotations = new AtomicLongArray(OPERATIONS * ROTATION_KINDS);
+	private final AtomicLongArray depths = new AtomicLongArray(OPERATIONS * DEPTH_BUCKETS);
+	private final AtomicIntegerArray shape = new AtomicIntegerArray(4);
+	private volatile boolean enabled = true;
+
+	// single writer, so a plain read followed by an ordered write is enough
+	private static void increment(AtomicLongArray counters, int i) {
+		counters.lazySet(i, counters.get(i) + 1);
+	}
+
+	private static void add(AtomicLongArray counters, int i, int amount) {
+		if (amount != 0) {
+			counters.lazySet(i, counters.get(i) + amount);
+		}
+	}
+
+	// Records an edit from the details the tracker gathered during it, then
+	// clears them for the next one.
+	void recordEdit(int operation, RotationTracker tracker) {
+		increment(this.operations, operation);
+		int base = operation * ROTATION_KINDS;
+		add(this.rotations, base + SINGLE_LEFT, tracker.singleLeft);
+		add(this.rotations, base + SINGLE_RIGHT, tracker.singleRight);
+		add(this.rotations, base + DOUBLE_LEFT, tracker.doubleLeft);
+		add(this.rotations, base + DOUBLE_RIGHT, tracker.doubleRight);
+		recordDepth(operation, tracker.depth);
+		tracker.resetOperation();
+	}
+
+	// Publishes the tree's shape after an edit, for size(), height(),
+	// totalRotationCount() and estimatedRetainedBytes().
+	void publishShape(int size, int height, int totalRotations, int nodeBytes) {
+		this.shape.lazySet(SIZE, size);
+		this.shape.lazySet(HEIGHT, height);
+		this.shape.lazySet(TOTAL_ROTATIONS, totalRotations);
+		this.shape.lazySet(NODE_BYTES, nodeBytes);
+	}
+
+	void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return false while the tree's statistics are disabled, when the values
+	 *         here are the last ones from before that
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * @param operation ADD, DELETE or GET
+	 * @return how many times the operation ran, read without a snapshot()
+	 */
+	public long operations(int operation) {
+		return this.operations.get(operation);
+	}
+
+	/**
+	 * @return the tree's size after its last edit
+	 */
+	public int size() {
+		return this.shape.get(SIZE);
+	}
+
+	/**
+	 * @return the tree's height after its last edit, -1 when it was empty
+	 */
+	public int height() {
+		return this.shape.get(HEIGHT);
+	}
+
+	/**
+	 * @return the tree's totalRotationCount() after its last edit
+	 */
+	public int totalRotationCount() {
+		return this.shape.get(TOTAL_ROTATIONS);
+	}
+
+	/**
+	 * @return the tree's estimatedRetainedBytes() after its last edit
+	 */
+	public long estimatedRetainedBytes() {
+		return (long) this.shape.get(SIZE) * this.shape.get(NODE_BYTES);
+	}
+
+	void recordGet(int depth) {
+		increment(this.operations, GET);
+		recordDepth(GET, depth);
+	}
+
+	private void recordDepth(int operation, int depth) {
+		increment(this.depths, operation * DEPTH_BUCKETS + Math.min(depth, DEPTH_BUCKETS - 1));
+	}
+
+	/**
+	 * @return a copy of the counters that later operations won't change
+	 */
+	public Snapshot snapshot() {
+		long[] ops = new long[OPERATIONS];
+		long[] rots = new long[OPERATIONS * ROTATION_KINDS];
+		long[] hist = new long[OPERATIONS * DEPTH_BUCKETS];
+		for (int i = 0; i < ops.length; i++) {
+			ops[i] = this.operations.get(i);
+		}
+		for (int i = 0; i < rots.length; i++) {
+			rots[i] = this.rotations.get(i);
+		}
+		for (int i = 0; i < hist.length; i++) {
+			hist[i] = this.depths.get(i);
+		}
+		return new Snapshot(ops, rots, hist, size());
+	}
+
+	/**
+	 * Counters at one point in time.
+	 */
+	public static class Snapshot {
+		private final long[] operations;
+		private final long[] rotations;
+		private final long[] depths;
+		private final int size;
+
+		Snapshot(long[] operations, long[] rotations, long[] depths, int size) {
+			this.operations = operations;
+			this.rotations = rotations;
+			this.depths = depths;
+			this.size = size;
+		}
+
+		/**
+		 * @param operation ADD, DELETE or GET
+		 * @return how many times the operation ran
+		 */
+		public long operations(int operation) {
+			return this.operations[operation];
+		}
+
+		/**
+		 * @param operation ADD or DELETE
+		 * @param kind      SINGLE_LEFT, SINGLE_RIGHT, DOUBLE_LEFT or DOUBLE_RIGHT
+		 * @return how many rotations of that kind the operation caused
+		 */
+		public long rotations(int operation, int kind) {
+			return this.rotations[operation * ROTATION_KINDS + kind];
+		}
+
+		/**
+		 * @return rotations of every kind caused by every operation, with a double
+		 *         rotation counting as two like totalRotationCount()
+		 */
+		public long totalRotations() {
+			long total = 0;
+			for (int op = 0; op < OPERATIONS; op++) {
+				total += rotations(op, SINGLE_LEFT) + rotations(op, SINGLE_RIGHT)
+						+ 2 * (rotations(op, DOUBLE_LEFT) + rotations(op, DOUBLE_RIGHT));
+			}
+			return total;
+		}
+
+		/**
+		 * @param operation ADD, DELETE or GET
+		 * @return entry d is the number of operations that passed through d nodes
+		 */
+		public long[] depthHistogram(int operation) {
+			long[] histogram = new long[DEPTH_BUCKETS];
+			System.arraycopy(this.depths, operation * DEPTH_BUCKETS, histogram, 0, DEPTH_BUCKETS);
+			return histogram;
+		}
+
+		/**
+		 * @param operation ADD, DELETE or GET
+		 * @return average number of nodes the operation passed through, or 0
+		 */
+		public double meanDepth(int operation) {
+			long count = 0;
+			long total = 0;
+			for (int d = 0; d < DEPTH_BUCKETS; d++) {
+				long n = this.depths[operation * DEPTH_BUCKETS + d];
+				count += n;
+				total += n * d;
+			}
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		/**
+		 * @return size of the tree after its last recorded edit
+		 */
+		public int size() {
+			return this.size;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the per-tree operation counters.
+ */
+public class EditTreeStatsTest {
+
+	@Test
+	public void testDisabledByDefault() {
+		EditTree t = new EditTree();
+		assertNull(t.getStatistics());
+		EditTreeStats stats = t.enableStatistics();
+		assertSame(stats, t.enableStatistics());
+		t.disableStatistics();
+		assertNull(t.getStatistics());
+	}
+
+	@Test
+	public void testRotationKinds() {
+		EditTree t = new EditTree();
+		EditTreeStats stats = t.enableStatistics();
+		t.add('a');
+		t.add('b');
+		t.add('c'); // single left
+		t.add('z', 0);
+		t.add('y', 0); // single right
+		EditTree u = new EditTree();
+		EditTreeStats doubles = u.enableStatistics();
+		u.add('c');
+		u.add('a', 0);
+		u.add('b', 1); // double right
+		u.add('e');
+		u.add('d', 3); // double left
+
+		EditTreeStats.Snapshot s = stats.snapshot();
+		assertEquals(5, s.operations(EditTreeStats.ADD));
+		assertEquals(1, s.rotations(EditTreeStats.ADD, EditTreeStats.SINGLE_LEFT));
+		assertEquals(1, s.rotations(EditTreeStats.ADD, EditTreeStats.SINGLE_RIGHT));
+		assertEquals(0, s.rotations(EditTreeStats.ADD, EditTreeStats.DOUBLE_LEFT));
+		assertEquals(t.totalRotationCount(), s.totalRotations());
+		assertEquals(5, s.size());
+
+		EditTreeStats.Snapshot d = doubles.snapshot();
+		assertEquals(1, d.rotations(EditTreeStats.ADD, EditTreeStats.DOUBLE_RIGHT));
+		assertEquals(1, d.rotations(EditTreeStats.ADD, EditTreeStats.DOUBLE_LEFT));
+		assertEquals(u.totalRotationCount(), d.totalRotations());
+	}
+
+	@Test
+	public void testDeleteRotationsAreAttributedToDelete() {
+		EditTree t = new EditTree("abcdefghijklmno");
+		EditTreeStats stats = t.enableStatistics();
+		Random random = new Random(3);
+		for (int i = 0; i < 12; i++) {
+			t.delete(random.nextInt(t.size()));
+		}
+		EditTreeStats.Snapshot s = stats.snapshot();
+		assertEquals(12, s.operations(EditTreeStats.DELETE));
+		assertEquals(0, s.operations(EditTreeStats.ADD));
+		assertEquals(t.totalRotationCount(), s.totalRotations());
+	}
+
+	@Test
+	public void testDepthHistogram() {
+		EditTree t = new EditTree("abcdefg"); // perfect tree of height 2
+		EditTreeStats stats = t.enableStatistics();
+		for (int i = 0; i < 7; i++) {
+			t.get(i);
+		}
+		long[] histogram = stats.snapshot().depthHistogram(EditTreeStats.GET);
+		assertEquals(1, histogram[1]); // the root
+		assertEquals(2, histogram[2]);
+		assertEquals(4, histogram[3]);
+		assertEquals(17.0 / 7, stats.snapshot().meanDepth(EditTreeStats.GET), 1e-9);
+
+		t.add('x', 0); // passes the three nodes down the left spine
+		assertEquals(1, stats.snapshot().depthHistogram(EditTreeStats.ADD)[3]);
+	}
+
+	@Test
+	public void testEnablingLateIgnoresEarlierEdits() {
+		EditTree t = new EditTree();
+		for (int i = 0; i < 100; i++) {
+			t.add('a');
+		}
+		EditTreeStats stats = t.enableStatistics();
+		t.add('b', 0);
+		EditTreeStats.Snapshot s = stats.snapshot();
+		assertEquals(1, s.operations(EditTreeStats.ADD));
+		long depths = 0;
+		for (long count : s.depthHistogram(EditTreeStats.ADD)) {
+			depths += count;
+		}
+		assertEquals(1, depths);
+		assertEquals(0, s.totalRotations());
+	}
+}
@@ -1,11 +0,0 @@
-package editortrees;
-
-public class HeightBalance {
-	public int height;
-	public boolean balance;
-
-	public HeightBalance(boolean balance, int height) {
-		this.height = height;
-		this.balance = balance;
-	}
-}
@@ -0,0 +1,293 @@
+package editortrees;
+
+import java.nio.CharBuffer;
+
+/**
+ * A document that can grow past Integer.MAX_VALUE characters. The text is kept
+ * as a sequence of EditTree chunks, each small enough for int ranks, and a
+ * Fenwick tree over the chunk sizes turns a long position into a chunk and an
+ * offset in O(log chunks). Edits then go to that chunk's own tree, so a small
+ * document with one chunk pays only a size check on top of EditTree.
+ *
+ * A chunk that fills up is split in two; a chunk that empties is dropped. Like
+ * EditTree, this class is not thread-safe.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class LongEditTree {
+
+	// Small enough that a split (a copy of the chunk) stays cheap next to the
+	// inserts that filled it, large enough that there are few chunks.
+	static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	private final int chunkSize;
+	private EditTree[] chunks;
+	private int chunkCount;
+	// Fenwick tree over the chunk sizes, 1-indexed
+	private long[] sizes;
+	private long size;
+
+	// set by locate(), so lookups don't have to return a pair
+	private int foundOffset;
+
+	public LongEditTree() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize most characters kept in one chunk
+	 */
+	LongEditTree(int chunkSize) {
+		if (chunkSize < 2) {
+			throw new IllegalArgumentException("chunk size must be at least 2: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		this.chunks = new EditTree[] { new EditTree() };
+		this.chunkCount = 1;
+		this.sizes = new long[2];
+	}
+
+	public LongEditTree(CharSequence s) {
+		this();
+		append(s);
+	}
+
+	/**
+	 * @return the number of characters, which may be more than an int can hold
+	 */
+	public long size() {
+		return this.size;
+	}
+
+	/**
+	 * @return how many EditTree chunks hold the text
+	 */
+	public int chunkCount() {
+		return this.chunkCount;
+	}
+
+	/**
+	 * @param ch character to add to the end
+	 */
+	public void add(char ch) {
+		add(ch, this.size);
+	}
+
+	/**
+	 * @param ch  character to add
+	 * @param pos in-order position it goes to, from 0 to size() inclusive
+	 * @throws IndexOutOfBoundsException if pos is negative or past the end
+	 */
+	public void add(char ch, long pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int chunk = locateForInsert(pos);
+		if (this.chunks[chunk].size() >= this.chunkSize) {
+			splitChunk(chunk);
+			chunk = locateForInsert(pos);
+		}
+		this.chunks[chunk].add(ch, this.foundOffset);
+		addToSize(chunk, 1);
+	}
+
+	/**
+	 * @param pos position of the character
+	 * @return the character at pos
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than size()
+	 */
+	public char get(long pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int chunk = locate(pos);
+		return this.chunks[chunk].get(this.foundOffset);
+	}
+
+	/**
+	 * @param pos    position of the first character
+	 * @param length number of characters
+	 * @return the characters from pos to pos + length
+	 * @throws IndexOutOfBoundsException if the range doesn't fit in the text
+	 */
+	public String get(long pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || pos > this.size - length) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length == 0) {
+			return "";
+		}
+		char[] out = new char[length];
+		int chunk = locate(pos);
+		int offset = this.foundOffset;
+		int copied = 0;
+		while (copied < length) {
+			EditTree tree = this.chunks[chunk];
+			int count = Math.min(tree.size() - offset, length - copied);
+			tree.getChars(offset, offset + count, out, copied);
+			copied += count;
+			chunk++;
+			offset = 0;
+		}
+		return new String(out);
+	}
+
+	/**
+	 * @param pos position of the character to remove
+	 * @return the removed character
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than size()
+	 */
+	public char delete(long pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int chunk = locate(pos);
+		char removed = this.chunks[chunk].delete(this.foundOffset);
+		if (this.chunks[chunk].size() == 0 && this.chunkCount > 1) {
+			removeChunk(chunk);
+		} else {
+			addToSize(chunk, -1);
+		}
+		return removed;
+	}
+
+	/**
+	 * Adds s to the end, filling the last chunk and building new chunks for the
+	 * rest in one pass each.
+	 *
+	 * @param s text to append
+	 */
+	public void append(CharSequence s) {
+		int length = s.length();
+		EditTree last = this.chunks[this.chunkCount - 1];
+		int room = Math.min(this.chunkSize - last.size(), length);
+		if (last.size() == 0 && room < length) {
+			room = 0; // an empty last chunk is simply replaced below
+		}
+		last.append(CharBuffer.wrap(s, 0, room));
+		int from = room;
+		addToSize(this.chunkCount - 1, room);
+		if (from == length) {
+			return;
+		}
+		while (from < length) {
+			int to = Math.min(length, from + this.chunkSize);
+			EditTree chunk = new EditTree(CharBuffer.wrap(s, from, to));
+			if (last.size() == 0) {
+				this.chunks[this.chunkCount - 1] = chunk;
+			} else {
+				insertChunk(this.chunkCount, chunk);
+			}
+			last = chunk;
+			from = to;
+		}
+		rebuildSizes();
+	}
+
+	/**
+	 * @return the whole text
+	 * @throws IllegalStateException if the text is too long for one String
+	 */
+	@Override
+	public String toString() {
+		if (this.size > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("too long for a String: " + this.size);
+		}
+		StringBuilder sb = new StringBuilder((int) this.size);
+		for (int i = 0; i < this.chunkCount; i++) {
+			sb.append(this.chunks[i].toCharArray());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Finds the chunk holding pos (which must be less than size) and sets
+	 * foundOffset to pos's index inside it.
+	 */
+	private int locate(long pos) {
+		if (this.chunkCount == 1) {
+			this.foundOffset = (int) pos;
+			return 0;
+		}
+		// descend the Fenwick tree: the largest prefix of chunks ending at or
+		// before pos
+		int index = 0;
+		long rest = pos;
+		for (int step = Integer.highestOneBit(this.chunkCount); step > 0; step >>= 1) {
+			int next = index + step;
+			if (next <= this.chunkCount && this.sizes[next] <= rest) {
+				index = next;
+				rest -= this.sizes[next];
+			}
+		}
+		this.foundOffset = (int) rest;
+		return index;
+	}
+
+	// like locate(), but pos may be size, which goes at the end of the last chunk
+	private int locateForInsert(long pos) {
+		if (pos == this.size) {
+			int last = this.chunkCount - 1;
+			this.foundOffset = this.chunks[last].size();
+			return last;
+		}
+		return locate(pos);
+	}
+
+	private void addToSize(int chunk, long delta) {
+		this.size += delta;
+		for (int i = chunk + 1; i <= this.chunkCount; i += i & -i) {
+			this.sizes[i] += delta;
+		}
+	}
+
+	// Halves a full chunk. Splitting is rare (once per chunkSize / 2 inserts into
+	// the chunk), so the sizes are simply rebuilt.
+	private void splitChunk(int chunk) {
+		char[] chars = this.chunks[chunk].toCharArray();
+		int half = chars.length / 2;
+		this.chunks[chunk] = new EditTree(CharBuffer.wrap(chars, 0, half));
+		insertChunk(chunk + 1, new EditTree(CharBuffer.wrap(chars, half, chars.length - half)));
+		rebuildSizes();
+	}
+
+	private void removeChunk(int chunk) {
+		System.arraycopy(this.chunks, chunk + 1, this.chunks, chunk, this.chunkCount - chunk - 1);
+		this.chunkCount--;
+		this.chunks[this.chunkCount] = null;
+		rebuildSizes();
+	}
+
+	private void insertChunk(int index, EditTree chunk) {
+		if (this.chunkCount == this.chunks.length) {
+			EditTree[] bigger = new EditTree[this.chunks.length * 2];
+			System.arraycopy(this.chunks, 0, bigger, 0, this.chunkCount);
+			this.chunks = bigger;
+		}
+		System.arraycopy(this.chunks, index, this.chunks, index + 1, this.chunkCount - index);
+		this.chunks[index] = chunk;
+		this.chunkCount++;
+	}
+
+	// O(chunks) rebuild of the Fenwick tree and the total size
+	private void rebuildSizes() {
+		if (this.sizes.length < this.chunkCount + 1) {
+			this.sizes = new long[this.chunks.length + 1];
+		}
+		long total = 0;
+		for (int i = 1; i <= this.chunkCount; i++) {
+			this.sizes[i] = this.chunks[i - 1].size();
+			total += this.sizes[i];
+		}
+		for (int i = this.chunkCount + 1; i < this.sizes.length; i++) {
+			this.sizes[i] = 0;
+		}
+		for (int i = 1; i <= this.chunkCount; i++) {
+			int parent = i + (i & -i);
+			if (parent <= this.chunkCount) {
+				this.sizes[parent] += this.sizes[i];
+			}
+		}
+		this.size = total;
+	}
+}
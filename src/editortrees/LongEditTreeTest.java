@@ -0,0 +1,104 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the long-indexed, chunked tree. Small chunk sizes make the splits
+ * and merges happen at test sizes.
+ */
+public class LongEditTreeTest {
+
+	@Test
+	public void testRandomEditsAcrossChunks() {
+		Random rand = new Random(37);
+		LongEditTree t = new LongEditTree(8);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			if (expected.length() > 0 && rand.nextInt(5) < 2) {
+				int pos = rand.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = rand.nextInt(expected.length() + 1);
+				char ch = (char) ('a' + rand.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+			assertEquals(expected.length(), t.size());
+		}
+		assertEquals(expected.toString(), t.toString());
+		for (int i = 0; i < expected.length(); i++) {
+			assertEquals(expected.charAt(i), t.get(i));
+		}
+		assertTrue(t.chunkCount() > 1);
+	}
+
+	@Test
+	public void testAppendAndRanges() {
+		LongEditTree t = new LongEditTree(4);
+		t.append("ab");
+		assertEquals(1, t.chunkCount());
+		t.append("cdefghij");
+		t.add('!');
+		assertEquals("abcdefghij!", t.toString());
+		assertEquals(11L, t.size());
+		assertEquals("cdefgh", t.get(2, 6));
+		assertEquals("", t.get(11, 0));
+		assertEquals(3, t.chunkCount());
+		t.add('-', 4);
+		assertEquals("abcd-efghij!", t.toString());
+	}
+
+	@Test
+	public void testRangesAcrossManyChunks() {
+		Random rand = new Random(38);
+		LongEditTree t = new LongEditTree(16);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			StringBuilder part = new StringBuilder();
+			for (int j = rand.nextInt(40); j > 0; j--) {
+				part.append((char) ('a' + rand.nextInt(26)));
+			}
+			t.append(part);
+			expected.append(part);
+		}
+		assertEquals(expected.toString(), t.toString());
+		for (int i = 0; i < 300; i++) {
+			int from = rand.nextInt(expected.length() + 1);
+			int length = rand.nextInt(expected.length() - from + 1);
+			assertEquals(expected.substring(from, from + length), t.get(from, length));
+		}
+	}
+
+	@Test
+	public void testEmptyChunksAreDropped() {
+		LongEditTree t = new LongEditTree(2);
+		t.append("abcdef");
+		assertEquals(3, t.chunkCount());
+		t.delete(2);
+		t.delete(2);
+		assertEquals(2, t.chunkCount());
+		assertEquals("abef", t.toString());
+		while (t.size() > 0) {
+			t.delete(0);
+		}
+		assertEquals(1, t.chunkCount());
+		t.add('z', 0);
+		assertEquals("z", t.toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetPastEnd() {
+		new LongEditTree("abc").get(3L);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testAddNegative() {
+		new LongEditTree("abc").add('x', -1L);
+	}
+}
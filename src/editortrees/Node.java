@@ -34,7 +34,6 @@ public class Node {
 	Node left, right; // subtrees
 	int rank; // inorder position of this node within its own subtree.
 	Code balance;
-	public DisplayableNodeWrapper displayableNodeWrapper;
 
 	// Feel free to add other fields that you find useful.
 	// You probably want a NULL_NODE, but you can comment it out if you decide
@@ -43,6 +42,11 @@ public class Node {
 	// but they could be anything since you shouldn't ever actually refer to them in
 	// your code.
 	static final Node NULL_NODE = new Node('\0', null, null);
+
+	// Heap cost of one node with compressed oops: a 12-byte header, the char,
+	// the rank and three references, padded to 8. Display wrappers live in the
+	// displayer, and search summaries in SummaryNode, not here.
+	static final int ESTIMATED_BYTES = 32;
 	// Node parent; You may want parent, but think twice: keeping it up-to-date
 	// takes effort too, maybe more than it's worth.
 
@@ -56,7 +60,6 @@ public class Node {
 		this.left = left;
 		this.right = right;
 		this.balance = Code.SAME;
-		this.displayableNodeWrapper = new DisplayableNodeWrapper(this);
 	}
 
 	public Node(char data) {
@@ -64,6 +67,51 @@ public class Node {
 		this(data, NULL_NODE, NULL_NODE);
 	}
 
+	// A leaf holding data: a SummaryNode when the tree keeps search summaries
+	// for brackets, a plain node when brackets is null.
+	static Node leaf(char data, Brackets brackets) {
+		return brackets == null ? new Node(data) : new SummaryNode(data, brackets);
+	}
+
+	// Gives a recycled node new data; SummaryNode also looks up its bracket.
+	void setData(char data, Brackets brackets) {
+		this.data = data;
+	}
+
+	// Recomputes this node's subtree summary from its children's. Call it, bottom
+	// up, after changing a node's children or data. Plain nodes keep none.
+	void updateSummary() {
+	}
+
+	// For rotations: the new root of a rotated subtree holds the same characters
+	// the old root did, so it takes over the old root's summary as is.
+	void takeSummary(Node oldRoot) {
+	}
+
+	// Whether the summary matches the children's, for TreeValidator.
+	boolean summaryIsCurrent() {
+		return true;
+	}
+
+	// The summary of a plain node says nothing: its mask has every bit, so
+	// searches never skip it, and it counts no brackets. The NULL_NODE's is
+	// empty, as SummaryNode expects of a missing child.
+	long mask() {
+		return this == NULL_NODE ? 0 : -1L;
+	}
+
+	int bracketNet() {
+		return 0;
+	}
+
+	int bracketMin() {
+		return 0;
+	}
+
+	int bracket() {
+		return 0;
+	}
+
 	// Provided to you to enable testing, please don't change.
 	int slowHeight() {
 		if (this == NULL_NODE) {
@@ -93,58 +141,241 @@ public class Node {
 
 	}
 
+	// Writes this subtree in-order into out, starting at offset. The rank tells
+	// us where this node's character goes, so no running cursor is needed.
+	public void toCharArray(char[] out, int offset) {
+		if (this == NULL_NODE) {
+			return;
+		}
+		this.left.toCharArray(out, offset);
+		out[offset + this.rank] = this.data;
+		this.right.toCharArray(out, offset + this.rank + 1);
+	}
+
+	// Writes the characters of this subtree at positions [from, to) into out,
+	// from out[at] on; offset is this subtree's first position. Subtrees wholly
+	// outside the range aren't entered, so this is O(log n + to - from).
+	void getChars(int offset, int from, int to, char[] out, int at) {
+		if (this == NULL_NODE) {
+			return;
+		}
+		int here = offset + this.rank;
+		if (from < here) {
+			this.left.getChars(offset, from, to, out, at);
+		}
+		if (from <= here && here < to) {
+			out[at + here - from] = this.data;
+		}
+		if (here + 1 < to) {
+			this.right.getChars(here + 1, from, to, out, at);
+		}
+	}
+
 	public Node addHelp(char ch, int pos, RotationTracker rotationCount) {
 		if (this == NULL_NODE) { // handle null case (simply add at the end)
-			return new Node(ch); // return to parent
-		} else if (pos > this.rank) {
+			return rotationCount.newNode(ch); // return to parent
+		}
+		rotationCount.depth++;
+		if (pos > this.rank) {
 			// go right
 			this.right = right.addHelp(ch, pos - this.rank - 1, rotationCount); // right add case
+			this.updateSummary();
 			if (rotationCount.keepRotating) {
-				if (this.balance == Code.LEFT) { // check left case
-					this.balance = Code.SAME; // adjust to right balance
-					rotationCount.keepRotating = false; // no rotation needed
-				} else if (this.balance == Code.SAME) { // no rotation needed, however future rotations are possible
-					this.balance = Code.RIGHT;
-				} else { // right -> trigger a rotation
-					// left rotation
-					rotationCount.keepRotating = false;
-					if (this.right.balance == Code.LEFT) { // right child is left -> double left rotation
-						rotationCount.count += 2; // add 2 rotations
-						return this.doubleLeftRotation(this, this.right.left, this.right);
-					} else // right child is balance right -> single left rotation
-					{
-						rotationCount.count++; // add 1 rotation
-						return this.singleLeftRotation(this, this.right);
-					}
-				}
+				return this.rightGrew(rotationCount);
 			}
 		} else { // left recursion and increment rank
 			this.rank++;
 			this.left = left.addHelp(ch, pos, rotationCount); // left add case
+			this.updateSummary();
 			if (rotationCount.keepRotating) {
-				if (this.balance == Code.RIGHT) { // check right case
-					this.balance = Code.SAME;
-					rotationCount.keepRotating = false; // no rotation needed
-				} else if (this.balance == Code.SAME) { // no rotation needed, however future rotations are possible
-					this.balance = Code.LEFT;
-				} else { // left -> trigger a rotation
-					// right rotation
-					rotationCount.keepRotating = false;
-					if (this.left.balance == Code.RIGHT) { // left child is right -> double right rotation
-						rotationCount.count += 2; // add 2 rotations
-						return this.doubleRightRotation(this, this.left.right, this.left);
-					} else // left child is left -> single right rotation
-					{
-						rotationCount.count++; // add 1 rotation
-						return this.singleRightRotation(this, this.left);
-					}
-				}
+				return this.leftGrew(rotationCount);
 			}
 		}
 		// return the node that was added
 		return this;
 	}
 
+	// The right subtree just got one taller. Fixes the balance code, rotating if
+	// needed, and clears keepRotating once this subtree's height stops changing.
+	private Node rightGrew(RotationTracker rotationCount) {
+		if (this.balance == Code.LEFT) { // check left case
+			this.balance = Code.SAME; // adjust to right balance
+			rotationCount.keepRotating = false; // no rotation needed
+		} else if (this.balance == Code.SAME) { // no rotation needed, however future rotations are possible
+			this.balance = Code.RIGHT;
+		} else { // right -> trigger a rotation
+			// left rotation
+			rotationCount.keepRotating = false;
+			if (this.right.balance == Code.LEFT) { // right child is left -> double left rotation
+				rotationCount.count += 2; // add 2 rotations
+				rotationCount.doubleLeft++;
+				return this.doubleLeftRotation(this, this.right.left, this.right);
+			} else // right child is balance right -> single left rotation
+			{
+				rotationCount.count++; // add 1 rotation
+				rotationCount.singleLeft++;
+				return this.singleLeftRotation(this, this.right);
+			}
+		}
+		return this;
+	}
+
+	// Mirror of rightGrew().
+	private Node leftGrew(RotationTracker rotationCount) {
+		if (this.balance == Code.RIGHT) { // check right case
+			this.balance = Code.SAME;
+			rotationCount.keepRotating = false; // no rotation needed
+		} else if (this.balance == Code.SAME) { // no rotation needed, however future rotations are possible
+			this.balance = Code.LEFT;
+		} else { // left -> trigger a rotation
+			// right rotation
+			rotationCount.keepRotating = false;
+			if (this.left.balance == Code.RIGHT) { // left child is right -> double right rotation
+				rotationCount.count += 2; // add 2 rotations
+				rotationCount.doubleRight++;
+				return this.doubleRightRotation(this, this.left.right, this.left);
+			} else // left child is left -> single right rotation
+			{
+				rotationCount.count++; // add 1 rotation
+				rotationCount.singleRight++;
+				return this.singleRightRotation(this, this.left);
+			}
+		}
+		return this;
+	}
+
+	// Height of this subtree read off the balance codes, following the taller
+	// child down: O(log n), no full walk. -1 for NULL_NODE.
+	int height() {
+		int height = -1;
+		for (Node n = this; n != NULL_NODE; n = n.balance == Code.LEFT ? n.left : n.right) {
+			height++;
+		}
+		return height;
+	}
+
+	// Joins left, mid and right, in that order, into one AVL tree in
+	// O(|height(left) - height(right)|) steps. mid must be a detached node;
+	// leftSize is the number of nodes in left.
+	static Node join(Node left, int leftSize, Node mid, Node right, RotationTracker rotationCount) {
+		return join(left, leftSize, left.height(), mid, right, right.height(), rotationCount);
+	}
+
+	// Same, for a caller that already knows the heights of left and right.
+	static Node join(Node left, int leftSize, int leftHeight, Node mid, Node right, int rightHeight,
+			RotationTracker rotationCount) {
+		Node joined;
+		if (leftHeight > rightHeight + 1) {
+			joined = left.joinRight(leftSize, leftHeight, mid, right, rightHeight, rotationCount);
+		} else if (rightHeight > leftHeight + 1) {
+			joined = right.joinLeft(rightHeight, left, leftSize, leftHeight, mid, rotationCount);
+		} else {
+			joined = mid.attach(left, leftSize, right, leftHeight - rightHeight);
+		}
+		rotationCount.keepRotating = true;
+		return joined;
+	}
+
+	// Walks down the right spine of this (taller) tree to the first subtree no
+	// more than one taller than right, and puts mid there with that subtree on
+	// its left and right on its right. Ranks on the spine don't change.
+	private Node joinRight(int size, int height, Node mid, Node right, int rightHeight,
+			RotationTracker rotationCount) {
+		if (height <= rightHeight + 1) {
+			rotationCount.keepRotating = true; // mid is one taller than this was
+			return mid.attach(this, size, right, height - rightHeight);
+		}
+		int childHeight = this.balance == Code.LEFT ? height - 2 : height - 1;
+		this.right = this.right.joinRight(size - this.rank - 1, childHeight, mid, right, rightHeight, rotationCount);
+		this.updateSummary();
+		if (rotationCount.keepRotating) {
+			return this.rightGrew(rotationCount);
+		}
+		return this;
+	}
+
+	// Mirror of joinRight(), down the left spine of this (taller) right tree.
+	private Node joinLeft(int height, Node left, int leftSize, int leftHeight, Node mid,
+			RotationTracker rotationCount) {
+		if (height <= leftHeight + 1) {
+			rotationCount.keepRotating = true;
+			return mid.attach(left, leftSize, this, leftHeight - height);
+		}
+		int childHeight = this.balance == Code.RIGHT ? height - 2 : height - 1;
+		this.rank += leftSize + 1;
+		this.left = this.left.joinLeft(childHeight, left, leftSize, leftHeight, mid, rotationCount);
+		this.updateSummary();
+		if (rotationCount.keepRotating) {
+			return this.leftGrew(rotationCount);
+		}
+		return this;
+	}
+
+	// Makes this the parent of left and right; lean is height(left) - height(right).
+	private Node attach(Node left, int leftSize, Node right, int lean) {
+		this.left = left;
+		this.right = right;
+		this.rank = leftSize;
+		this.balance = lean > 0 ? Code.LEFT : lean < 0 ? Code.RIGHT : Code.SAME;
+		this.updateSummary();
+		return this;
+	}
+
+	// Splits t, which has size nodes, into its first pos nodes and the rest,
+	// leaving the two roots in rotationCount.splitLeft and splitRight. Each node
+	// on the path down is joined back in as the mid of its side, so nothing is
+	// allocated. O(log^2 n), since every join() measures the heights it needs.
+	static void split(Node t, int size, int pos, RotationTracker rotationCount) {
+		if (t == NULL_NODE) {
+			rotationCount.splitLeft = NULL_NODE;
+			rotationCount.splitRight = NULL_NODE;
+			return;
+		}
+		Node left = t.left;
+		Node right = t.right;
+		int leftSize = t.rank;
+		if (pos <= leftSize) {
+			split(left, leftSize, pos, rotationCount);
+			rotationCount.splitRight = join(rotationCount.splitRight, leftSize - pos, t, right, rotationCount);
+		} else {
+			split(right, size - leftSize - 1, pos - leftSize - 1, rotationCount);
+			rotationCount.splitLeft = join(left, leftSize, t, rotationCount.splitLeft, rotationCount);
+		}
+	}
+
+	// Joins left and right with nothing between them: the first node of right is
+	// taken out and becomes the mid.
+	static Node concat(Node left, int leftSize, Node right, RotationTracker rotationCount) {
+		if (left == NULL_NODE) {
+			return right;
+		}
+		if (right == NULL_NODE) {
+			return left;
+		}
+		Node mid = right;
+		while (mid.hasLeft()) {
+			mid = mid.left;
+		}
+		NodePool pool = rotationCount.pool;
+		rotationCount.pool = null; // mid is reused, not retired
+		rotationCount.keepRotating = true;
+		Node rest = right.delete(0, rotationCount);
+		rotationCount.pool = pool;
+		return join(left, leftSize, mid, rest, rotationCount);
+	}
+
+	// Hands every node of a subtree that was cut out of the tree to the pool.
+	static void retireAll(Node t, RotationTracker rotationCount) {
+		if (t == NULL_NODE || rotationCount.pool == null) {
+			return;
+		}
+		Node left = t.left;
+		Node right = t.right;
+		rotationCount.retire(t);
+		retireAll(left, rotationCount);
+		retireAll(right, rotationCount);
+	}
+
 
 	private Node doubleRightRotation(Node parent, Node grandchild, Node child) {
 		// use the same logic as the double left rotation, just reverse directions
@@ -173,6 +404,10 @@ public class Node {
 		}
 		// grandchild now has equal balance
 		grandchild.balance = Code.SAME;
+		grandchild.takeSummary(parent);
+		child.updateSummary();
+		parent.updateSummary();
+		RotationEvent.emit("double right", grandchild);
 		return grandchild;
 	}
 
@@ -203,9 +438,21 @@ public class Node {
 				}
 				// grandchild now has equal balance
 				grandchild.balance = Code.SAME;
+				grandchild.takeSummary(parent);
+				parent.updateSummary();
+				child.updateSummary();
+				RotationEvent.emit("double left", grandchild);
 				return grandchild;
 	}
 
+	// Single left rotation at this node, counted the way addHelp counts one. For
+	// RightSpine, which rebalances appends without going through addHelp.
+	Node rotateLeft(RotationTracker rotationCount) {
+		rotationCount.count++;
+		rotationCount.singleLeft++;
+		return this.singleLeftRotation(this, this.right);
+	}
+
 	private Node singleLeftRotation(Node parent, Node child) {
 		// make the parent the child, and the child the parent
 		parent.right = child.left;
@@ -215,6 +462,9 @@ public class Node {
 		parent.balance = Code.SAME;
 		child.balance = Code.SAME;
 		child.rank += parent.rank + 1; // increment the rank
+		child.takeSummary(parent);
+		parent.updateSummary();
+		RotationEvent.emit("single left", child);
 		return child; // the child is the new parent, so it should be returned
 	}
 
@@ -228,6 +478,9 @@ public class Node {
 		parent.balance = Code.SAME;
 		child.balance = Code.SAME;
 		parent.rank -= child.rank + 1; // the rank should be decremented
+		child.takeSummary(parent);
+		parent.updateSummary();
+		RotationEvent.emit("single right", child);
 		return child; // the child is the new parent, so it should be returned
 	}
 
@@ -256,22 +509,172 @@ public class Node {
 		}
 	}
 
-	public boolean ranksMatchLeftSubtreeSize() {
-		if (this == NULL_NODE) {
-			return true;
+	// Same as getHelp(pos), also counting the nodes it passes through, the one it
+	// stops at included, in rotationCount.depth.
+	char getHelp(int pos, RotationTracker rotationCount) {
+		Node n = this;
+		rotationCount.depth++;
+		while (pos != n.rank) {
+			if (pos < n.rank) {
+				n = n.left;
+			} else {
+				pos -= n.rank + 1;
+				n = n.right;
+			}
+			rotationCount.depth++;
+		}
+		return n.data;
+	}
+
+	// Looks up positions[lo, hi), which are sorted and all in this subtree, whose
+	// first position is offset, into the same places in out. The positions are
+	// split around this node's, so each node is visited once however many of
+	// them pass through it.
+	void getAll(int offset, int[] positions, int lo, int hi, char[] out) {
+		int pos = offset + this.rank;
+		int at = firstAtLeast(positions, pos, lo, hi);
+		int after = at;
+		while (after < hi && positions[after] == pos) {
+			out[after++] = this.data;
+		}
+		if (lo < at) {
+			this.left.getAll(offset, positions, lo, at, out);
+		}
+		if (after < hi) {
+			this.right.getAll(pos + 1, positions, after, hi, out);
+		}
+	}
+
+	// First index in [lo, hi) of sorted positions holding at least pos, or hi.
+	private static int firstAtLeast(int[] positions, int pos, int lo, int hi) {
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if (positions[m] < pos) {
+				lo = m + 1;
+			} else {
+				hi = m;
+			}
+		}
+		return lo;
+	}
+
+	// First position at or after from that holds c, or -1. offset is this
+	// subtree's first position; subtrees whose mask lacks bit are skipped.
+	int indexOf(char c, long bit, int from, int offset) {
+		if (this == NULL_NODE || (this.mask() & bit) == 0) {
+			return -1;
+		}
+		int here = offset + this.rank;
+		if (from < here) {
+			int found = this.left.indexOf(c, bit, from, offset);
+			if (found >= 0) {
+				return found;
+			}
 		}
-		int leftTree = left.treeSize();
-		if (this.rank != leftTree) {
-			return false;
+		if (from <= here && this.data == c) {
+			return here;
 		}
-		return left.ranksMatchLeftSubtreeSize() && right.ranksMatchLeftSubtreeSize();
+		return this.right.indexOf(c, bit, from, here + 1);
 	}
 
-	private int treeSize() {
+	// Mirror image of indexOf(): the last position at or before from.
+	int lastIndexOf(char c, long bit, int from, int offset) {
+		if (this == NULL_NODE || (this.mask() & bit) == 0) {
+			return -1;
+		}
+		int here = offset + this.rank;
+		if (from > here) {
+			int found = this.right.lastIndexOf(c, bit, from, here + 1);
+			if (found >= 0) {
+				return found;
+			}
+		}
+		if (from >= here && this.data == c) {
+			return here;
+		}
+		return this.left.lastIndexOf(c, bit, from, offset);
+	}
+
+	// The bracket count just before pos.
+	int bracketsBefore(int pos) {
+		int count = 0;
+		Node n = this;
+		while (n != NULL_NODE) {
+			if (pos <= n.rank) {
+				n = n.left;
+			} else {
+				count += n.left.bracketNet() + n.bracket();
+				pos -= n.rank + 1;
+				n = n.right;
+			}
+		}
+		return count;
+	}
+
+	// First position at or after from whose bracket takes the running count
+	// below limit, or -1. count is the running count before this subtree and
+	// offset its first position.
+	int closingAfter(int from, int offset, int count, int limit) {
+		if (this == NULL_NODE || from <= offset && count + this.bracketMin() >= limit) {
+			return -1;
+		}
+		int here = offset + this.rank;
+		if (from < here) {
+			int found = this.left.closingAfter(from, offset, count, limit);
+			if (found >= 0) {
+				return found;
+			}
+		}
+		count += this.left.bracketNet() + this.bracket();
+		if (from <= here && count < limit) {
+			return here;
+		}
+		return this.right.closingAfter(from, here + 1, count, limit);
+	}
+
+	// Last position at or before from where the running count just before it is
+	// below limit, or -1. Only subtrees that lie wholly before from can be
+	// skipped by their minimum, since a node doesn't know where its subtree ends.
+	int openingBefore(int from, int offset, int count, int limit) {
 		if (this == NULL_NODE) {
-			return 0;
+			return -1;
 		}
-		return 1 + left.treeSize() + right.treeSize();
+		int here = offset + this.rank;
+		if (from < here) {
+			return this.left.openingBefore(from, offset, count, limit);
+		}
+		int atHere = count + this.left.bracketNet();
+		if (from > here) {
+			int found = this.right.openingBefore(from, here + 1, atHere + this.bracket(), limit);
+			if (found >= 0) {
+				return found;
+			}
+		}
+		if (atHere < limit) {
+			return here;
+		}
+		return this.left.lastBelow(offset, count, limit);
+	}
+
+	// openingBefore() over the whole subtree.
+	private int lastBelow(int offset, int count, int limit) {
+		if (this == NULL_NODE || count + this.bracketMin() >= limit) {
+			return -1;
+		}
+		int here = offset + this.rank;
+		int atHere = count + this.left.bracketNet();
+		int found = this.right.lastBelow(here + 1, atHere + this.bracket(), limit);
+		if (found >= 0) {
+			return found;
+		}
+		if (atHere < limit) {
+			return here;
+		}
+		return this.left.lastBelow(offset, count, limit);
+	}
+
+	public boolean ranksMatchLeftSubtreeSize() {
+		return TreeValidator.kind(TreeValidator.validate(this, -1, TreeValidator.CHECK_RANKS)) == TreeValidator.OK;
 	}
 
 	// helper methods for milestone 2:
@@ -299,28 +702,7 @@ public class Node {
 	}
 
 	public boolean balanceCodesAreCorrect() {
-		return this.balanceCodes().balance;
-	}
-
-	private HeightBalance balanceCodes() {
-		if (this == NULL_NODE) {
-			return new HeightBalance(true, 0);
-		}
-		HeightBalance left = this.left.balanceCodes();
-		HeightBalance right = this.right.balanceCodes();
-		int height = Math.max(left.height, right.height) + 1;
-		if (!(left.balance && right.balance)) {
-			return new HeightBalance(false, height);
-		}
-		boolean correct;
-		if (left.height > right.height) {
-			correct = this.balance == Code.LEFT;
-		} else if (left.height < right.height) {
-			correct = this.balance == Code.RIGHT;
-		} else {
-			correct = this.balance == Code.SAME;
-		}
-		return new HeightBalance(correct, height);
+		return TreeValidator.kind(TreeValidator.validate(this, -1, TreeValidator.CHECK_BALANCE)) == TreeValidator.OK;
 	}
 	
 	// helper methods for milestone 3:
@@ -332,116 +714,151 @@ public class Node {
 	// its helpers, the others were less than 10 lines long. Well-named helper
 	// methods are more effective than comments in writing clean code.
 
-	public Node CreateEditTree(String s) {
-		Node n = NULL_NODE;
-		if (s.length() == 1) {
-			n = new Node(s.charAt(0));
-		} else if (s.length() > 0) {
-			n = new Node(s.charAt(s.length()/2));
-			n.rank = s.length()/2;
-			if (Math.floor(Math.log(s.length() - s.length()/2 - 1)/Math.log(2)) < Math.floor(Math.log(s.length()/2)/Math.log(2))) {
-				n.balance = Code.LEFT;
-			}
-			n.left = n.left.CreateEditTree(s.substring(0, s.length()/2));
-			n.right = n.right.CreateEditTree(s.substring(s.length()/2 + 1, s.length()));
+	// Builds the subtree for s[from, to) sequentially. The middle character is the
+	// root, so the left half is never smaller than the right. The nodes keep
+	// summaries for brackets unless it is null.
+	static Node buildBalanced(CharSequence s, int from, int to, Brackets brackets) {
+		if (from >= to) {
+			return NULL_NODE;
 		}
+		Node n = balancedRoot(s, from, to, brackets);
+		n.left = buildBalanced(s, from, from + n.rank, brackets);
+		n.right = buildBalanced(s, from + n.rank + 1, to, brackets);
+		n.updateSummary();
 		return n;
 	}
+
+	// Makes the root of the balanced subtree for s[from, to), with its rank and
+	// balance code set but no children yet. Shared by the sequential and parallel
+	// builders so they always produce the same shape.
+	static Node balancedRoot(CharSequence s, int from, int to, Brackets brackets) {
+		int length = to - from;
+		Node n = leaf(s.charAt(from + length / 2), brackets);
+		n.rank = length / 2;
+		if (balancedHeight(length - length / 2 - 1) < balancedHeight(length / 2)) {
+			n.balance = Code.LEFT;
+		}
+		return n;
+	}
+
+	// Height of a subtree built by buildBalanced() from n characters, which is
+	// floor(log2(n)), or -1 when there are none.
+	static int balancedHeight(int n) {
+		return 31 - Integer.numberOfLeadingZeros(n);
+	}
 	
 	public Node delete(int pos, RotationTracker rotationCount) {
+		// keepRotating means "this subtree got shorter", so the parent still has to
+		// adjust its balance code. Unlike add(), fixing an imbalance can leave the
+		// subtree shorter, so a rotation does not always stop the climb.
+		rotationCount.depth++;
 		if (pos < this.rank) {
 			this.left = this.left.delete(pos, rotationCount);
+			this.updateSummary();
 			this.rank--;
 			if (rotationCount.keepRotating) {
-				if (this.balance == Code.LEFT) { // check left case
-					this.balance = Code.SAME; // adjust to right balance
-					rotationCount.keepRotating = false; // no rotation needed
-				} else if (this.balance == Code.SAME) { // no rotation needed, however future rotations are possible
-					this.balance = Code.RIGHT;
-				} else { // right -> trigger a rotation
-					// left rotation
-					rotationCount.keepRotating = false;
-					if (this.right.balance == Code.LEFT) { // right child is left -> double left rotation
-						rotationCount.count += 2; // add 2 rotations
-						return this.doubleLeftRotation(this, this.right.left, this.right);
-					} else // right child is balance right -> single left rotation
-					{
-						rotationCount.count++; // add 1 rotation
-						return this.singleLeftRotation(this, this.right);
-					}
-				}
+				return this.leftShrunk(rotationCount);
 			}
 		} else if (pos > this.rank) {
 			this.right = this.right.delete(pos - this.rank - 1, rotationCount);
+			this.updateSummary();
 			if (rotationCount.keepRotating) {
-				if (this.balance == Code.RIGHT) { // check right case
-					this.balance = Code.SAME;
-					rotationCount.keepRotating = false; // no rotation needed
-				} else if (this.balance == Code.SAME) { // no rotation needed, however future rotations are possible
-					this.balance = Code.LEFT;
-				} else { // left -> trigger a rotation
-					// right rotation
-					rotationCount.keepRotating = false;
-					if (this.left.balance == Code.RIGHT) { // left child is right -> double right rotation
-						rotationCount.count += 2; // add 2 rotations
-						return this.doubleRightRotation(this, this.left.right, this.left);
-					} else // left child is left -> single right rotation
-					{
-						rotationCount.count++; // add 1 rotation
-						return this.singleRightRotation(this, this.left);
-					}
-				}
+				return this.rightShrunk(rotationCount);
 			}
 		} else {
-			if (!this.hasLeft() && !this.hasRight()) {
-				return NULL_NODE;
-			} else if (!this.hasLeft()) {
-				return this.right;
+			Node replacement;
+			if (!this.hasLeft()) {
+				replacement = this.right; // also covers the leaf case
 			} else if (!this.hasRight()) {
-				return this.left;
+				replacement = this.left;
 			} else {
-				Node n = this.left;
-				while (n.right != NULL_NODE) {
-					n = n.right;
-				}
-				Node temp = new Node(n.data);
-				this.left = this.left.delete(pos - 1, rotationCount);
-				rotationCount.keepRotating = true;
-				temp.right = this.right;
-				temp.left = this.left;
-				if (this.left == NULL_NODE) {
-					temp.rank = 0;
-				} else {
-					temp.rank = this.left.rank + 1;
-				}
-				if (this.balance == Code.SAME || this.balance == Code.RIGHT) {
-					temp.balance = Code.RIGHT;
+				// two children: the successor (leftmost node on the right) takes this
+				// node's place. Unlinking it from the right subtree leaves the node
+				// itself untouched, so it can be moved up as is.
+				replacement = this.right;
+				while (replacement.hasLeft()) {
+					replacement = replacement.left;
 				}
+				rotationCount.successorMoved = true;
+				NodePool pool = rotationCount.pool;
+				rotationCount.pool = null; // the successor is reused, not retired
+				Node rest = this.right.delete(0, rotationCount);
+				rotationCount.pool = pool;
+				replacement.left = this.left;
+				replacement.right = rest;
+				replacement.rank = this.rank;
+				replacement.balance = this.balance;
+				replacement.updateSummary();
 				if (rotationCount.keepRotating) {
-					if (temp.balance == Code.LEFT) { // check left case
-						temp.balance = Code.SAME; // adjust to right balance
-						rotationCount.keepRotating = false; // no rotation needed
-					} else if (temp.balance == Code.SAME) { // no rotation needed, however future rotations are possible
-						temp.balance = Code.RIGHT;
-					} else { // right -> trigger a rotation
-						// left rotation
-						rotationCount.keepRotating = false;
-						if (temp.right.balance == Code.LEFT) { // right child is left -> double left rotation
-							rotationCount.count += 2; // add 2 rotations
-							return temp.doubleLeftRotation(temp, temp.right.left, temp.right);
-						} else // right child is balance right -> single left rotation
-						{
-							rotationCount.count++; // add 1 rotation
-							return temp.singleLeftRotation(temp, temp.right);
-						}
-					}
+					replacement = replacement.rightShrunk(rotationCount);
 				}
-				return temp;
 			}
+			rotationCount.retire(this);
+			return replacement;
 		}
 		
 		return this;
 	}
+
+	// Rebalances after the left subtree got one shorter and returns the new root
+	// of this subtree.
+	private Node leftShrunk(RotationTracker rotationCount) {
+		if (this.balance == Code.LEFT) { // evened out, but this subtree is shorter now
+			this.balance = Code.SAME;
+			return this;
+		} else if (this.balance == Code.SAME) { // height unchanged, stop here
+			this.balance = Code.RIGHT;
+			rotationCount.keepRotating = false;
+			return this;
+		}
+		// right was already taller -> rotate left
+		Node child = this.right;
+		if (child.balance == Code.LEFT) { // double left rotation, subtree gets shorter
+			rotationCount.count += 2;
+			rotationCount.doubleLeft++;
+			return this.doubleLeftRotation(this, child.left, child);
+		}
+		rotationCount.count++;
+		rotationCount.singleLeft++;
+		boolean childWasEven = child.balance == Code.SAME;
+		Node n = this.singleLeftRotation(this, child);
+		if (childWasEven) {
+			// singleLeftRotation() sets the codes for a child that leaned right. An even
+			// child leaves both leaning, and the height doesn't change, so we're done.
+			this.balance = Code.RIGHT;
+			child.balance = Code.LEFT;
+			rotationCount.keepRotating = false;
+		}
+		return n;
+	}
+
+	// Mirror image of leftShrunk().
+	private Node rightShrunk(RotationTracker rotationCount) {
+		if (this.balance == Code.RIGHT) {
+			this.balance = Code.SAME;
+			return this;
+		} else if (this.balance == Code.SAME) {
+			this.balance = Code.LEFT;
+			rotationCount.keepRotating = false;
+			return this;
+		}
+		Node child = this.left;
+		if (child.balance == Code.RIGHT) {
+			rotationCount.count += 2;
+			rotationCount.doubleRight++;
+			return this.doubleRightRotation(this, child.right, child);
+		}
+		rotationCount.count++;
+		rotationCount.singleRight++;
+		boolean childWasEven = child.balance == Code.SAME;
+		Node n = this.singleRightRotation(this, child);
+		if (childWasEven) {
+			this.balance = Code.LEFT;
+			child.balance = Code.RIGHT;
+			rotationCount.keepRotating = false;
+		}
+		return n;
+	}
 	
 	// DONE: By the end of milestone 1, consider if you want to use the graphical
 	// debugger. See
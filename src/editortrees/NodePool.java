@@ -0,0 +1,70 @@
+package editortrees;
+
+/**
+ * A bounded free list of nodes removed from a tree, handed back out when the
+ * same tree grows again. Editing sessions that delete and retype text then
+ * keep reusing the same nodes instead of churning the allocator and the young
+ * generation.
+ * 
+ * Pooled nodes are chained through their right links. A pool belongs to one
+ * tree and, like the tree, is not thread-safe.
+ */
+public class NodePool {
+
+	private final int capacity;
+	private Node free = Node.NULL_NODE;
+	private int retained;
+
+	public NodePool(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns a leaf holding ch, reusing a pooled node when there is one. A pool
+	 * only ever holds the kind of node its tree makes, so brackets, null for
+	 * plain nodes, is the same every time.
+	 */
+	Node take(char ch, Brackets brackets) {
+		if (this.free == Node.NULL_NODE) {
+			return Node.leaf(ch, brackets);
+		}
+		Node node = this.free;
+		this.free = node.right;
+		this.retained--;
+		node.setData(ch, brackets);
+		node.left = Node.NULL_NODE;
+		node.right = Node.NULL_NODE;
+		node.rank = 0;
+		node.balance = Node.Code.SAME;
+		node.updateSummary();
+		return node;
+	}
+
+	/**
+	 * Keeps a node that has left its tree, unless the pool is already full. The
+	 * left link is cleared so a pooled node doesn't keep a subtree reachable.
+	 */
+	void give(Node node) {
+		if (this.retained == this.capacity) {
+			return;
+		}
+		node.left = Node.NULL_NODE;
+		node.right = this.free;
+		this.free = node;
+		this.retained++;
+	}
+
+	/**
+	 * @return how many nodes are waiting to be reused
+	 */
+	public int retained() {
+		return this.retained;
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+}
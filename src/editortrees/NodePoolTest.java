@@ -0,0 +1,95 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for reusing deleted nodes.
+ */
+public class NodePoolTest {
+
+	private static void assertValid(EditTree t) {
+		long result = t.checkInvariants();
+		assertEquals(TreeValidator.describe(result), TreeValidator.OK, TreeValidator.kind(result));
+	}
+
+	@Test
+	public void testRandomEditsWithRecycling() {
+		Random rand = new Random(35);
+		EditTree t = new EditTree();
+		t.enableNodeRecycling(64);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			if (expected.length() > 0 && rand.nextInt(5) < 2) {
+				int pos = rand.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = rand.nextInt(expected.length() + 1);
+				char ch = (char) ('a' + rand.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+			if (i % 1000 == 0) {
+				assertValid(t);
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertValid(t);
+		assertTrue(t.getNodePool().retained() <= 64);
+	}
+
+	@Test
+	public void testPoolIsBounded() {
+		EditTree t = new EditTree("abcdefghij");
+		t.enableNodeRecycling(3);
+		for (int i = 0; i < 10; i++) {
+			t.delete(0);
+		}
+		assertEquals(3, t.getNodePool().retained());
+		t.add('x');
+		t.add('y');
+		assertEquals(1, t.getNodePool().retained());
+		assertEquals("xy", t.toString());
+		t.disableNodeRecycling();
+		assertNull(t.getNodePool());
+	}
+
+	@Test
+	public void testChurnDoesNotAllocateNodes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		EditTree t = new EditTree("the quick brown fox jumps over the lazy dog");
+		t.enableNodeRecycling(16);
+		for (int i = 0; i < 200000; i++) { // let the JIT settle first
+			churn(t, i);
+		}
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		int ops = 100000;
+		for (int i = 0; i < ops; i++) {
+			churn(t, i);
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+		// without recycling every cycle costs at least one node
+		assertTrue("allocated " + allocated + " bytes", allocated < ops * 4L);
+		assertEquals("the quick brown fox jumps over the lazy dog", t.toString());
+	}
+
+	private static void churn(EditTree t, int i) {
+		int pos = i % t.size();
+		char ch = t.delete(pos);
+		t.add(ch, pos);
+	}
+}
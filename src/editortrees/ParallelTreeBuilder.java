@@ -0,0 +1,64 @@
+package editortrees;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that builds the same balanced subtree as
+ * Node.buildBalanced(), but builds the left and right halves concurrently when
+ * there are enough characters to make it worth it. Both builders pick their
+ * roots with Node.balancedRoot(), so the shape, ranks and balance codes do not
+ * depend on how many threads did the work.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class ParallelTreeBuilder extends RecursiveTask<Node> {
+	private static final long serialVersionUID = 1L;
+
+	// Below this many characters the halves are built on the current thread.
+	static final int SEQUENTIAL_CUTOFF = 1 << 14;
+
+	private final CharSequence s;
+	private final int from;
+	private final int to;
+	private final Brackets brackets;
+
+	/**
+	 * @param s        characters to build from
+	 * @param from     index of the first character of the subtree, inclusive
+	 * @param to       index after the last character of the subtree
+	 * @param brackets pairs the nodes summarize, or null for plain nodes
+	 */
+	public ParallelTreeBuilder(CharSequence s, int from, int to, Brackets brackets) {
+		this.s = s;
+		this.from = from;
+		this.to = to;
+		this.brackets = brackets;
+	}
+
+	// Builds s[from, to) on pool. A pool worker can go on referring to the last
+	// task it ran until it runs another, so the finished task lets go of the
+	// tree before it is handed back; otherwise a tree the caller has dropped
+	// stays reachable.
+	static Node build(ForkJoinPool pool, CharSequence s, int from, int to, Brackets brackets) {
+		ParallelTreeBuilder task = new ParallelTreeBuilder(s, from, to, brackets);
+		Node root = pool.invoke(task);
+		task.setRawResult(null);
+		return root;
+	}
+
+	@Override
+	protected Node compute() {
+		if (this.to - this.from <= SEQUENTIAL_CUTOFF) {
+			return Node.buildBalanced(this.s, this.from, this.to, this.brackets);
+		}
+		Node n = Node.balancedRoot(this.s, this.from, this.to, this.brackets);
+		ParallelTreeBuilder left = new ParallelTreeBuilder(this.s, this.from, this.from + n.rank, this.brackets);
+		left.fork();
+		n.right = new ParallelTreeBuilder(this.s, this.from + n.rank + 1, this.to, this.brackets).compute();
+		n.left = left.join();
+		left.setRawResult(null);
+		n.updateSummary();
+		return n;
+	}
+}
@@ -0,0 +1,105 @@
+package editortrees;
+
+/**
+ * The path from the root down the right links to the last node, kept between
+ * appends so add(char) doesn't have to walk down from the root each time. An
+ * append hangs the new leaf off the bottom and walks back up only as far as the
+ * balance codes keep changing, which is O(1) amortized. The result has the same
+ * shape and rotations as addHelp() would give.
+ * 
+ * Any other edit can change the path, so the tree clears the cache and it is
+ * reloaded, in O(log n), on the next append.
+ * 
+ * Every spine node's subtree gains the new character, so in a tree that keeps
+ * summaries its bit is or-ed into theirs on the way up (see
+ * SummaryNode.appended()). A node that already has the bit means all those
+ * above it do too, so this is O(1) amortized as well. Only a bracket changes
+ * the bracket counts, and then each spine node's count is adjusted, in
+ * O(log n).
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class RightSpine {
+
+	// nodes[0] is the root, nodes[length - 1] the last node in order
+	private Node[] nodes = new Node[16];
+	private int length;
+	private boolean valid;
+
+	/**
+	 * Forgets the cached path. The stale references are overwritten on the next
+	 * load rather than cleared, so this stays O(1).
+	 */
+	void clear() {
+		this.valid = false;
+	}
+
+	boolean isValid() {
+		return this.valid;
+	}
+
+	/**
+	 * Adds ch after the last node of the tree rooted at root.
+	 * 
+	 * @return the root afterwards, which changes if the root was rotated
+	 */
+	Node append(Node root, char ch, RotationTracker rotationCount) {
+		if (!this.valid) {
+			this.load(root);
+		}
+		rotationCount.depth += this.length; // the nodes a descent would have passed
+		Node leaf = rotationCount.newNode(ch);
+		if (this.length == 0) {
+			this.push(leaf);
+			return leaf;
+		}
+		this.nodes[this.length - 1].right = leaf;
+		this.push(leaf);
+		if (leaf instanceof SummaryNode) {
+			SummaryNode.appended(this.nodes, this.length - 1, (SummaryNode) leaf);
+		}
+		// the subtree under nodes[i + 1] just got taller; nodes on the right spine
+		// never change rank since nothing is added to their left
+		for (int i = this.length - 2; i >= 0; i--) {
+			Node n = this.nodes[i];
+			if (n.balance == Node.Code.LEFT) {
+				n.balance = Node.Code.SAME;
+				break;
+			}
+			if (n.balance == Node.Code.SAME) {
+				n.balance = Node.Code.RIGHT;
+				continue;
+			}
+			// right-right case: the child grew from SAME to RIGHT, so a single
+			// rotation always does, and n drops off the spine
+			Node up = n.rotateLeft(rotationCount);
+			if (i == 0) {
+				root = up;
+			} else {
+				this.nodes[i - 1].right = up;
+			}
+			System.arraycopy(this.nodes, i + 1, this.nodes, i, this.length - i - 1);
+			this.length--;
+			this.nodes[this.length] = null;
+			break;
+		}
+		return root;
+	}
+
+	private void load(Node root) {
+		this.length = 0;
+		for (Node n = root; n != Node.NULL_NODE; n = n.right) {
+			this.push(n);
+		}
+		this.valid = true;
+	}
+
+	private void push(Node n) {
+		if (this.length == this.nodes.length) {
+			Node[] bigger = new Node[this.length * 2];
+			System.arraycopy(this.nodes, 0, bigger, 0, this.length);
+			this.nodes = bigger;
+		}
+		this.nodes[this.length++] = n;
+	}
+}
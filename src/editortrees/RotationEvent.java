@@ -0,0 +1,47 @@
+package editortrees;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a single rotation in Node. Rotations are far too
+ * frequent to record all the time, so this event is off unless a recording
+ * turns it on explicitly.
+ * 
+ * @author Kunaal and Tulsi
+ */
+@Name("editortrees.Rotation")
+@Label("EditTree Rotation")
+@Category("Editor Trees")
+@Description("A rotation while rebalancing an EditTree")
+@Enabled(false)
+@StackTrace(false)
+public class RotationEvent extends jdk.jfr.Event {
+
+	@Label("Kind")
+	String kind;
+
+	@Label("Rank")
+	@Description("Rank of the node that became the root of the rotated subtree")
+	int rank;
+
+	private static final EventType TYPE = EventType.getEventType(RotationEvent.class);
+
+	// Instant event; allocated only when a recording is taking it.
+	static void emit(String kind, Node newRoot) {
+		if (!TYPE.isEnabled()) {
+			return;
+		}
+		RotationEvent event = new RotationEvent();
+		if (event.shouldCommit()) {
+			event.kind = kind;
+			event.rank = newRoot.rank;
+			event.commit();
+		}
+	}
+}
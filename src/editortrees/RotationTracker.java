@@ -4,9 +4,48 @@ public class RotationTracker {
 
 	int count;
 	boolean keepRotating;
+
+	// Details of the current operation, for EditTreeStats. Bumping them is as
+	// cheap as bumping count, so they are kept up whether or not anyone reads them.
+	int singleLeft, singleRight, doubleLeft, doubleRight;
+	int depth; // nodes the descent passed through
 	
+	// Where removed nodes go and new ones come from; null when recycling is off.
+	NodePool pool;
+
+	// What the tree's nodes summarize, so new ones are made the same kind; null
+	// for plain nodes without search summaries.
+	Brackets brackets;
+
+	// results of Node.split(), so it doesn't have to allocate a pair
+	Node splitLeft, splitRight;
+
+	// Set by Node.delete() when the deleted node's successor was unlinked from
+	// further down and moved into its place, so the path to the position after
+	// it changed too.
+	boolean successorMoved;
+
 	public RotationTracker() {
 		this.count = 0;
 		this.keepRotating = true;
 	}
+
+	// Starts the per-operation details over.
+	void resetOperation() {
+		this.singleLeft = 0;
+		this.singleRight = 0;
+		this.doubleLeft = 0;
+		this.doubleRight = 0;
+		this.depth = 0;
+	}
+
+	Node newNode(char ch) {
+		return this.pool == null ? Node.leaf(ch, this.brackets) : this.pool.take(ch, this.brackets);
+	}
+
+	void retire(Node node) {
+		if (this.pool != null) {
+			this.pool.give(node);
+		}
+	}
 }
@@ -0,0 +1,126 @@
+package editortrees;
+
+/**
+ * A styled range of text, such as a token for syntax highlighting, held in a
+ * SpanIndex. Its ends move with edits made around it; start() and end() give
+ * the current range in O(log n).
+ *
+ * @author Kunaal and Tulsi
+ */
+public class Span {
+
+	final int style;
+	SpanIndex index; // null once removed or invalidated
+
+	// treap links; start, end and maxEnd are exact once every ancestor's shift
+	// has been added
+	Span left, right, parent;
+	int start, end;
+	int maxEnd; // largest end in this subtree
+	int shift; // still to be added to everything below this span
+	final int priority;
+
+	Span(SpanIndex index, int start, int end, int style, int priority) {
+		this.index = index;
+		this.start = start;
+		this.end = end;
+		this.maxEnd = end;
+		this.style = style;
+		this.priority = priority;
+	}
+
+	/**
+	 * @return the position of the span's first character; for a span no longer
+	 *         in its index, where it started when it was taken out
+	 */
+	public int start() {
+		return this.start + this.pendingShift();
+	}
+
+	/**
+	 * @return the position just past the span's last character; for a span no
+	 *         longer in its index, where it ended when it was taken out
+	 */
+	public int end() {
+		return this.end + this.pendingShift();
+	}
+
+	private int pendingShift() {
+		int shift = 0;
+		for (Span s = this.parent; s != null; s = s.parent) {
+			shift += s.shift;
+		}
+		return shift;
+	}
+
+	/**
+	 * @return the style the span was added with
+	 */
+	public int style() {
+		return this.style;
+	}
+
+	/**
+	 * @return false once the span has been removed or deleted text in it has
+	 *         invalidated it
+	 */
+	public boolean isAttached() {
+		return this.index != null;
+	}
+
+	/**
+	 * Takes this span out of its index. Does nothing if it is already out.
+	 */
+	public void remove() {
+		if (this.index != null) {
+			this.index.remove(this);
+		}
+	}
+
+	// Takes the span out of the treap for good, keeping its last range. Only
+	// call with every ancestor's shift already pushed down to it.
+	void detach() {
+		this.left = null;
+		this.right = null;
+		this.parent = null;
+		this.index = null;
+	}
+
+	// Moves this whole subtree by delta, in O(1).
+	void shiftAll(int delta) {
+		this.start += delta;
+		this.end += delta;
+		this.maxEnd += delta;
+		this.shift += delta;
+	}
+
+	// Passes the pending shift on to the children.
+	void push() {
+		if (this.shift != 0) {
+			if (this.left != null) {
+				this.left.shiftAll(this.shift);
+			}
+			if (this.right != null) {
+				this.right.shiftAll(this.shift);
+			}
+			this.shift = 0;
+		}
+	}
+
+	// Recomputes maxEnd from this span and its children.
+	void update() {
+		int max = this.end;
+		if (this.left != null) {
+			max = Math.max(max, this.left.maxEnd + this.shift);
+		}
+		if (this.right != null) {
+			max = Math.max(max, this.right.maxEnd + this.shift);
+		}
+		this.maxEnd = max;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + this.start() + ", " + this.end() + ") style " + this.style;
+	}
+}
@@ -0,0 +1,312 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Styled spans of one EditTree, such as the tokens a syntax highlighter found,
+ * kept in place as the tree is edited. Spans live in a treap ordered by start,
+ * where each subtree knows the largest end in it and a shift of every span
+ * after an edit is recorded once near the root and handed down lazily. So an
+ * edit never visits the spans after it, and spansIn() only visits the spans
+ * overlapping the range asked for plus an O(log n) path to them: rendering a
+ * viewport doesn't touch the rest of a million-token file.
+ *
+ * Text inserted inside a span makes it longer; text inserted at or before its
+ * start moves it. Deleting any character of a span invalidates it: it is taken
+ * out of the index, keeps the range it had, and is passed to the invalidation
+ * callback so the highlighter knows what to look at again.
+ *
+ * Like EditTree, this class is not thread-safe.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class SpanIndex implements EditListener {
+
+	private final EditTree tree;
+	private final Consumer<Span> onInvalidated;
+	private Span root;
+	private int size;
+	private int seed = 0x6C8E9CF5;
+
+	// results of split(), so it doesn't have to allocate a pair
+	private Span splitLeft, splitRight;
+	// spans a deletion took out, reported once the treap is whole again
+	private final List<Span> invalidated = new ArrayList<>();
+
+	/**
+	 * Makes an empty index that listens to tree and drops invalidated spans
+	 * silently.
+	 *
+	 * @param tree tree whose edits move the spans
+	 */
+	public SpanIndex(EditTree tree) {
+		this(tree, null);
+	}
+
+	/**
+	 * @param tree          tree whose edits move the spans
+	 * @param onInvalidated told about each span a deletion invalidates, after it
+	 *                      has been taken out; may be null
+	 */
+	public SpanIndex(EditTree tree, Consumer<Span> onInvalidated) {
+		this.tree = tree;
+		this.onInvalidated = onInvalidated;
+		tree.addEditListener(this);
+	}
+
+	/**
+	 * Stops following the tree's edits.
+	 */
+	public void detach() {
+		this.tree.removeEditListener(this);
+	}
+
+	/**
+	 * @param start first position of the span
+	 * @param end   position just past its last character
+	 * @param style what the span is, e.g. a token kind
+	 * @return the new span
+	 * @throws IndexOutOfBoundsException unless 0 <= start < end <= the tree's
+	 *                                   size
+	 */
+	public Span add(int start, int end, int style) {
+		if (start < 0 || end <= start || end > this.tree.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		Span span = new Span(this, start, end, style, this.nextPriority());
+		this.split(this.root, start + 1);
+		Span after = this.splitRight;
+		this.root = this.merge(this.merge(this.splitLeft, span), after);
+		this.root.parent = null;
+		this.size++;
+		return span;
+	}
+
+	/**
+	 * @param pos    first position of the range
+	 * @param length length of the range
+	 * @return the spans with at least one character in [pos, pos + length), by
+	 *         start
+	 * @throws IndexOutOfBoundsException if the range isn't inside the tree
+	 */
+	public List<Span> spansIn(int pos, int length) {
+		if (pos < 0 || length < 0 || pos > this.tree.size() - length) {
+			throw new IndexOutOfBoundsException();
+		}
+		List<Span> found = new ArrayList<>();
+		this.collect(this.root, pos, pos + length, found);
+		return found;
+	}
+
+	/**
+	 * @return the number of spans in the index
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	void remove(Span span) {
+		int start = span.start();
+		int end = span.end();
+		span.push();
+		Span joined = this.merge(span.left, span.right);
+		Span parent = span.parent;
+		if (joined != null) {
+			joined.parent = parent;
+		}
+		if (parent == null) {
+			this.root = joined;
+		} else if (parent.left == span) {
+			parent.left = joined;
+		} else {
+			parent.right = joined;
+		}
+		for (Span s = parent; s != null; s = s.parent) {
+			s.update();
+		}
+		span.detach();
+		span.start = start;
+		span.end = end;
+		this.size--;
+	}
+
+	@Override
+	public void inserted(int pos, char ch) {
+		this.insertedLength(pos, 1);
+	}
+
+	@Override
+	public void inserted(int pos, CharSequence text) {
+		this.insertedLength(pos, text.length());
+	}
+
+	private void insertedLength(int pos, int length) {
+		if (this.root == null) {
+			return;
+		}
+		this.split(this.root, pos);
+		Span before = this.splitLeft;
+		Span after = this.splitRight;
+		if (after != null) {
+			after.shiftAll(length);
+		}
+		this.grow(before, pos, length);
+		this.root = this.merge(before, after);
+		this.root.parent = null;
+	}
+
+	// Lengthens the spans that pos is strictly inside. Their starts are before
+	// pos, so the order doesn't change.
+	private void grow(Span s, int pos, int length) {
+		if (s == null || s.maxEnd <= pos) {
+			return;
+		}
+		s.push();
+		this.grow(s.left, pos, length);
+		this.grow(s.right, pos, length);
+		if (s.end > pos) {
+			s.end += length;
+		}
+		s.update();
+	}
+
+	@Override
+	public void deleted(int pos, int length) {
+		if (this.root == null) {
+			return;
+		}
+		this.split(this.root, pos + length);
+		Span before = this.splitLeft;
+		Span after = this.splitRight;
+		if (after != null) {
+			after.shiftAll(-length);
+		}
+		before = this.invalidate(before, pos);
+		if (before != null) {
+			before.parent = null;
+		}
+		this.root = this.merge(before, after);
+		if (this.root != null) {
+			this.root.parent = null;
+		}
+		if (this.onInvalidated != null) {
+			for (Span span : this.invalidated) {
+				this.onInvalidated.accept(span);
+			}
+		}
+		this.invalidated.clear();
+	}
+
+	// Takes out the spans of s that end after pos; they all start before the end
+	// of the deleted text, so they lost a character. Returns the new root.
+	private Span invalidate(Span s, int pos) {
+		if (s == null || s.maxEnd <= pos) {
+			return s;
+		}
+		s.push();
+		s.left = this.invalidate(s.left, pos);
+		s.right = this.invalidate(s.right, pos);
+		if (s.end > pos) {
+			Span joined = this.merge(s.left, s.right);
+			s.detach();
+			this.size--;
+			this.invalidated.add(s);
+			return joined;
+		}
+		if (s.left != null) {
+			s.left.parent = s;
+		}
+		if (s.right != null) {
+			s.right.parent = s;
+		}
+		s.update();
+		return s;
+	}
+
+	private void collect(Span s, int from, int to, List<Span> found) {
+		if (s == null || s.maxEnd <= from) {
+			return;
+		}
+		s.push();
+		this.collect(s.left, from, to, found);
+		if (s.start >= to) {
+			return; // everything to the right starts later still
+		}
+		if (s.end > from) {
+			found.add(s);
+		}
+		this.collect(s.right, from, to, found);
+	}
+
+	// Splits t into the spans starting before key and the rest, leaving the two
+	// roots, detached, in splitLeft and splitRight.
+	private void split(Span t, int key) {
+		this.splitInto(t, key);
+		if (this.splitLeft != null) {
+			this.splitLeft.parent = null;
+		}
+		if (this.splitRight != null) {
+			this.splitRight.parent = null;
+		}
+	}
+
+	private void splitInto(Span t, int key) {
+		if (t == null) {
+			this.splitLeft = null;
+			this.splitRight = null;
+			return;
+		}
+		t.push();
+		if (t.start < key) {
+			this.splitInto(t.right, key);
+			t.right = this.splitLeft;
+			if (t.right != null) {
+				t.right.parent = t;
+			}
+			t.update();
+			this.splitLeft = t;
+		} else {
+			this.splitInto(t.left, key);
+			t.left = this.splitRight;
+			if (t.left != null) {
+				t.left.parent = t;
+			}
+			t.update();
+			this.splitRight = t;
+		}
+	}
+
+	// Joins two treaps where every span of a starts no later than any of b.
+	private Span merge(Span a, Span b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.push();
+			a.right = this.merge(a.right, b);
+			a.right.parent = a;
+			a.update();
+			return a;
+		}
+		b.push();
+		b.left = this.merge(a, b.left);
+		b.left.parent = b;
+		b.update();
+		return b;
+	}
+
+	// xorshift; the treap only needs priorities that don't follow the starts
+	private int nextPriority() {
+		int x = this.seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		this.seed = x;
+		return x;
+	}
+}
@@ -0,0 +1,124 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that spans follow edits and that range queries find exactly the
+ * overlapping spans.
+ */
+public class SpanIndexTest {
+
+	@Test
+	public void testEditsMoveAndGrowSpans() {
+		EditTree t = new EditTree("int x = 42;");
+		SpanIndex spans = new SpanIndex(t);
+		Span keyword = spans.add(0, 3, 1);
+		Span number = spans.add(8, 10, 2);
+		t.add('1', 9); // inside the number
+		assertEquals(8, number.start());
+		assertEquals(11, number.end());
+		t.add(' ', 0); // before everything
+		assertEquals(1, keyword.start());
+		assertEquals(4, keyword.end());
+		assertEquals(9, number.start());
+		t.add('_', 4); // right after the keyword: not part of it
+		assertEquals(4, keyword.end());
+	}
+
+	@Test
+	public void testDeletionInvalidatesSpans() {
+		EditTree t = new EditTree("int x = 42;");
+		final List<Span> invalid = new ArrayList<>();
+		SpanIndex spans = new SpanIndex(t, invalid::add);
+		Span keyword = spans.add(0, 3, 1);
+		Span name = spans.add(4, 5, 3);
+		Span number = spans.add(8, 10, 2);
+		t.delete(1);
+		assertFalse(keyword.isAttached());
+		assertEquals(1, invalid.size());
+		assertEquals(0, invalid.get(0).start());
+		assertEquals(3, invalid.get(0).end());
+		assertTrue(name.isAttached());
+		assertEquals(3, name.start());
+		assertEquals(7, number.start());
+		assertEquals(2, spans.size());
+		name.remove();
+		assertEquals(1, spans.size());
+		assertEquals(3, name.start());
+	}
+
+	@Test
+	public void testRandomEditsAndQueries() {
+		Random random = new Random(42);
+		EditTree t = new EditTree();
+		t.append("the quick brown fox jumps over the lazy dog, again and again and again");
+		SpanIndex spans = new SpanIndex(t);
+		List<Span> live = new ArrayList<>();
+		List<int[]> expected = new ArrayList<>(); // start, end
+		for (int i = 0; i < 20000; i++) {
+			int choice = random.nextInt(10);
+			if (choice < 3 && t.size() > 1) {
+				int start = random.nextInt(t.size() - 1);
+				int end = start + 1 + random.nextInt(Math.min(8, t.size() - start));
+				live.add(spans.add(start, end, i));
+				expected.add(new int[] { start, end });
+			} else if (choice < 5 && t.size() > 1) {
+				int pos = random.nextInt(t.size());
+				t.delete(pos);
+				for (int k = expected.size() - 1; k >= 0; k--) {
+					int[] e = expected.get(k);
+					if (e[0] <= pos && e[1] > pos) {
+						assertFalse(live.remove(k).isAttached());
+						expected.remove(k);
+					} else if (e[0] > pos) {
+						e[0]--;
+						e[1]--;
+					}
+				}
+			} else if (choice < 6 && !live.isEmpty()) {
+				int k = random.nextInt(live.size());
+				live.remove(k).remove();
+				expected.remove(k);
+			} else {
+				int pos = random.nextInt(t.size() + 1);
+				t.add('+', pos);
+				for (int[] e : expected) {
+					if (e[0] >= pos) {
+						e[0]++;
+						e[1]++;
+					} else if (e[1] > pos) {
+						e[1]++;
+					}
+				}
+			}
+			if (i % 200 == 0) {
+				int from = random.nextInt(t.size() + 1);
+				int length = random.nextInt(t.size() - from + 1);
+				List<Span> found = spans.spansIn(from, length);
+				int overlapping = 0;
+				for (int k = 0; k < live.size(); k++) {
+					int[] e = expected.get(k);
+					assertEquals(e[0], live.get(k).start());
+					assertEquals(e[1], live.get(k).end());
+					if (e[0] < from + length && e[1] > from) {
+						overlapping++;
+						assertTrue(found.contains(live.get(k)));
+					}
+				}
+				assertEquals(overlapping, found.size());
+				for (int k = 1; k < found.size(); k++) {
+					assertTrue(found.get(k - 1).start() <= found.get(k).start());
+				}
+			}
+		}
+		assertEquals(live.size(), spans.size());
+	}
+}
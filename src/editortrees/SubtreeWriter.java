@@ -0,0 +1,53 @@
+package editortrees;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task that writes the in-order characters of a subtree into a shared
+ * array. Since a node's rank is the size of its left subtree, every subtree
+ * knows where its output starts before any character is written, so the left
+ * and right subtrees never touch the same part of the array and can be written
+ * at the same time.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class SubtreeWriter extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	// Below this many nodes the forking costs more than the copying does.
+	static final int SEQUENTIAL_CUTOFF = 1 << 14;
+
+	private Node node; // until compute() starts, see there
+	private final char[] out;
+	private final int offset;
+	private final int size;
+
+	/**
+	 * @param node   root of the subtree to write
+	 * @param out    array that receives the characters
+	 * @param offset index in out of the subtree's first character
+	 * @param size   number of nodes in the subtree
+	 */
+	public SubtreeWriter(Node node, char[] out, int offset, int size) {
+		this.node = node;
+		this.out = out;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	@Override
+	protected void compute() {
+		// a pool worker can go on referring to the last task it ran, so don't let
+		// that keep the tree reachable after the caller is done with it
+		Node node = this.node;
+		this.node = null;
+		if (this.size <= SEQUENTIAL_CUTOFF) {
+			node.toCharArray(this.out, this.offset);
+			return;
+		}
+		// the children's sizes come from the rank, so we never have to count nodes
+		this.out[this.offset + node.rank] = node.data;
+		invokeAll(new SubtreeWriter(node.left, this.out, this.offset, node.rank),
+				new SubtreeWriter(node.right, this.out, this.offset + node.rank + 1, this.size - node.rank - 1));
+	}
+}
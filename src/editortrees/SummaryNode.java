@@ -0,0 +1,107 @@
+package editortrees;
+
+/**
+ * A node that also summarizes its subtree for searching: which CharMask bits
+ * occur in it, for indexOf() and TextSearch, and its bracket nesting, for
+ * matchingBracket(). Trees only use these once summaries are enabled, since
+ * the extra fields take a node from 32 to 48 bytes. Every node of such a tree
+ * is a SummaryNode, apart from the NULL_NODE, whose summary is empty.
+ *
+ * @author Kunaal and Tulsi
+ */
+class SummaryNode extends Node {
+
+	// Heap cost with compressed oops: a plain node's 30 bytes of header and
+	// fields, then the mask, two ints and a byte, padded to 8.
+	static final int ESTIMATED_BYTES = 48;
+
+	// Which CharMask bits occur in this subtree.
+	long mask;
+	// Bracket nesting over this subtree: the net count, and the lowest running
+	// count, starting from 0 before the first character.
+	int bracketNet, bracketMin;
+	// This node's own bracket value, looked up in the tree's Brackets when the
+	// data is set, so updates don't need to know the tree.
+	byte bracket;
+
+	SummaryNode(char data, Brackets brackets) {
+		super(data);
+		this.bracket = (byte) brackets.value(data);
+		this.updateSummary();
+	}
+
+	@Override
+	void setData(char data, Brackets brackets) {
+		this.data = data;
+		this.bracket = (byte) brackets.value(data);
+	}
+
+	@Override
+	void updateSummary() {
+		this.mask = this.left.mask() | this.right.mask() | CharMask.bit(this.data);
+		int before = this.left.bracketNet() + this.bracket;
+		this.bracketNet = before + this.right.bracketNet();
+		this.bracketMin = Math.min(this.left.bracketMin(), before + this.right.bracketMin());
+	}
+
+	@Override
+	void takeSummary(Node oldRoot) {
+		SummaryNode old = (SummaryNode) oldRoot;
+		this.mask = old.mask;
+		this.bracketNet = old.bracketNet;
+		this.bracketMin = old.bracketMin;
+	}
+
+	@Override
+	boolean summaryIsCurrent() {
+		if (!hasSummary(this.left) || !hasSummary(this.right)) {
+			return false;
+		}
+		int before = this.left.bracketNet() + this.bracket;
+		return this.mask == (this.left.mask() | this.right.mask() | CharMask.bit(this.data))
+				&& this.bracketNet == before + this.right.bracketNet()
+				&& this.bracketMin == Math.min(this.left.bracketMin(), before + this.right.bracketMin());
+	}
+
+	private static boolean hasSummary(Node child) {
+		return child == NULL_NODE || child instanceof SummaryNode;
+	}
+
+	@Override
+	long mask() {
+		return this.mask;
+	}
+
+	@Override
+	int bracketNet() {
+		return this.bracketNet;
+	}
+
+	@Override
+	int bracketMin() {
+		return this.bracketMin;
+	}
+
+	@Override
+	int bracket() {
+		return this.bracket;
+	}
+
+	// Folds leaf, just hung off the end of the tree, into the summaries of the
+	// count nodes above it on the right spine, path[0] being the root. A node
+	// that already has the leaf's bits means all those above it do too, so the
+	// masks cost O(1) amortized; only a bracket changes the counts, and then
+	// every spine node's count is adjusted.
+	static void appended(Node[] path, int count, SummaryNode leaf) {
+		for (int i = count - 1; i >= 0 && (path[i].mask() & leaf.mask) != leaf.mask; i--) {
+			((SummaryNode) path[i]).mask |= leaf.mask;
+		}
+		if (leaf.bracketNet != 0) {
+			for (int i = count - 1; i >= 0; i--) {
+				SummaryNode n = (SummaryNode) path[i];
+				n.bracketNet += leaf.bracketNet;
+				n.bracketMin = Math.min(n.bracketMin, n.bracketNet);
+			}
+		}
+	}
+}
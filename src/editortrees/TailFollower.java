@@ -0,0 +1,155 @@
+package editortrees;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a file that keeps growing, like tail -f, appending what is added to
+ * it to an EditTree. Call poll() from a timer on the thread that owns the tree:
+ * it checks the file's size, decodes whatever is new and collects it. Collected
+ * text goes into the tree in one EditTree.append() once maxBatch characters are
+ * waiting, or once the oldest of them has waited maxLatency, so readers see new
+ * lines promptly without paying for one add() per character.
+ *
+ * A multi-byte character split across two writes is held back until the rest
+ * of it arrives. Bytes that don't decode become U+FFFD. If the file shrinks,
+ * e.g. a log rotated by truncation, following starts over from its beginning.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class TailFollower implements Closeable {
+
+	private static final int READ_BYTES = 1 << 16;
+
+	private final EditTree tree;
+	private final FileChannel channel;
+	private final CharsetDecoder decoder;
+	private final long maxLatencyNanos;
+	private final ByteBuffer bytes = ByteBuffer.allocateDirect(READ_BYTES);
+	private final CharBuffer pending; // capacity maxBatch
+	private long position;
+	private long pendingSince; // System.nanoTime() of the oldest pending char
+
+	/**
+	 * Opens file for reading, starting at its beginning. Nothing is read until
+	 * the first poll().
+	 *
+	 * @param tree       tree to append to
+	 * @param file       file to follow
+	 * @param charset    encoding of the file
+	 * @param maxBatch   most characters to collect before appending them
+	 * @param maxLatency longest a character may wait before it is appended
+	 * @param unit       unit of maxLatency
+	 * @throws IOException if the file can't be opened
+	 */
+	public TailFollower(EditTree tree, Path file, Charset charset, int maxBatch, long maxLatency, TimeUnit unit)
+			throws IOException {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+		}
+		if (maxLatency < 0) {
+			throw new IllegalArgumentException("maxLatency must not be negative: " + maxLatency);
+		}
+		this.tree = tree;
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.maxLatencyNanos = unit.toNanos(maxLatency);
+		this.pending = CharBuffer.allocate(maxBatch);
+	}
+
+	/**
+	 * Reads anything added to the file since the last poll and appends whatever
+	 * is due.
+	 *
+	 * @return the number of characters appended to the tree
+	 * @throws IOException if reading the file fails
+	 */
+	public int poll() throws IOException {
+		long now = System.nanoTime();
+		long end = this.channel.size();
+		if (end < this.position) {
+			// truncated: what we hold back belongs to the old contents
+			this.position = 0;
+			this.bytes.clear();
+			this.decoder.reset();
+		}
+		int appended = 0;
+		while (this.position < end) {
+			int read = this.channel.read(this.bytes, this.position);
+			if (read <= 0) {
+				break;
+			}
+			this.position += read;
+			this.bytes.flip();
+			appended += this.decode(now);
+			this.bytes.compact(); // keeps an incomplete character for next time
+		}
+		if (this.pending.position() > 0 && now - this.pendingSince >= this.maxLatencyNanos) {
+			appended += this.flush();
+		}
+		return appended;
+	}
+
+	// Decodes all the complete characters in bytes, appending each full batch.
+	private int decode(long now) {
+		int appended = 0;
+		while (true) {
+			boolean wasEmpty = this.pending.position() == 0;
+			CoderResult result = this.decoder.decode(this.bytes, this.pending, false);
+			if (wasEmpty && this.pending.position() > 0) {
+				this.pendingSince = now;
+			}
+			if (!result.isOverflow()) {
+				return appended;
+			}
+			appended += this.flush();
+		}
+	}
+
+	/**
+	 * Appends the collected characters now, however few or recent.
+	 *
+	 * @return the number of characters appended
+	 */
+	public int flush() {
+		this.pending.flip();
+		int length = this.pending.remaining();
+		this.tree.append(this.pending);
+		this.pending.clear();
+		return length;
+	}
+
+	/**
+	 * @return how far into the file has been read, in bytes
+	 */
+	public long position() {
+		return this.position;
+	}
+
+	/**
+	 * @return characters read but not yet appended
+	 */
+	public int pendingCharacters() {
+		return this.pending.position();
+	}
+
+	/**
+	 * Appends what is still collected and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.flush();
+		this.channel.close();
+	}
+}
@@ -0,0 +1,100 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for following a growing file into a tree.
+ */
+public class TailFollowerTest {
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		this.file = Files.createTempFile("tail", ".log");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.file);
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		Files.write(this.file, bytes, StandardOpenOption.APPEND);
+	}
+
+	private void write(String s) throws IOException {
+		write(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testFollowsAppendedText() throws IOException {
+		EditTree t = new EditTree();
+		try (TailFollower follower = new TailFollower(t, this.file, StandardCharsets.UTF_8, 1024, 0,
+				TimeUnit.MILLISECONDS)) {
+			assertEquals(0, follower.poll());
+			write("first line\n");
+			assertEquals(11, follower.poll());
+			write("second line\n");
+			follower.poll();
+			assertEquals("first line\nsecond line\n", t.toString());
+			assertEquals(TreeValidator.OK, TreeValidator.kind(t.checkInvariants()));
+		}
+	}
+
+	@Test
+	public void testBatchesUntilFullOrLate() throws IOException {
+		EditTree t = new EditTree();
+		try (TailFollower follower = new TailFollower(t, this.file, StandardCharsets.UTF_8, 4, 1, TimeUnit.HOURS)) {
+			write("abcdefghij");
+			assertEquals(8, follower.poll()); // two full batches
+			assertEquals(2, follower.pendingCharacters());
+			assertEquals("abcdefgh", t.toString());
+			assertEquals(2, follower.flush());
+			assertEquals("abcdefghij", t.toString());
+			write("xy");
+			follower.poll();
+		}
+		assertEquals("abcdefghijxy", t.toString()); // close flushes
+	}
+
+	@Test
+	public void testCharacterSplitAcrossWrites() throws IOException {
+		EditTree t = new EditTree();
+		byte[] e = "\u00e9".getBytes(StandardCharsets.UTF_8);
+		try (TailFollower follower = new TailFollower(t, this.file, StandardCharsets.UTF_8, 16, 0,
+				TimeUnit.MILLISECONDS)) {
+			write(new byte[] { 'a', e[0] });
+			follower.poll();
+			assertEquals("a", t.toString());
+			write(new byte[] { e[1], 'b' });
+			follower.poll();
+			assertEquals("a\u00e9b", t.toString());
+		}
+	}
+
+	@Test
+	public void testTruncationStartsOver() throws IOException {
+		EditTree t = new EditTree();
+		try (TailFollower follower = new TailFollower(t, this.file, StandardCharsets.UTF_8, 16, 0,
+				TimeUnit.MILLISECONDS)) {
+			write("old contents\n");
+			follower.poll();
+			Files.write(this.file, "new\n".getBytes(StandardCharsets.UTF_8));
+			follower.poll();
+			assertEquals("old contents\nnew\n", t.toString());
+			assertEquals(4, follower.position());
+		}
+	}
+}
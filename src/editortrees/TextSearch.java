@@ -0,0 +1,436 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds any of a set of literal patterns in an EditTree without copying its
+ * text. The patterns are compiled once into an Aho-Corasick automaton, which
+ * then reads the tree's characters in order straight off the nodes, with a
+ * stack as deep as the tree is tall, so a search costs O(n + matches) for any
+ * number of patterns.
+ *
+ * While no pattern has been started, whole subtrees that hold none of the
+ * patterns' first characters (by their CharMask summaries, in trees that keep
+ * them) are stepped over unread, so looking for a rare word mostly visits the
+ * paths to where it might be.
+ *
+ * Make one TextSearch per set of patterns and call find() for each search.
+ * Matches are produced lazily and the search can be cancelled, e.g. when the
+ * next keystroke changes what to look for. findAll() instead searches large
+ * trees in parallel, one subtree per task. Don't edit the tree while one of
+ * its searches is still being read.
+ *
+ * @author Kunaal and Tulsi
+ */
+public class TextSearch {
+
+	private final boolean ignoreCase;
+	private final int[] lengths; // of each pattern
+	// the automaton; state 0 is the root
+	private final char[][] keys; // sorted labels of each state's children
+	private final int[][] children;
+	private final int[] fail;
+	private final int[] output; // pattern ending at each state, or -1
+	private final int[] outputLink; // next state down the fail chain with an output, or -1
+	private final long firstMask; // CharMask bits of the patterns' first characters
+	private final int longest; // pattern length
+
+	// Subtrees smaller than this are searched on one thread by findAll().
+	static final int SEQUENTIAL_CUTOFF = 1 << 16;
+
+	/**
+	 * @param ignoreCase whether letters match their other case too, as with
+	 *                   String.equalsIgnoreCase()
+	 * @param patterns   what to look for; a pattern given twice is only reported
+	 *                   under its first index
+	 * @throws IllegalArgumentException if there are no patterns or one is empty
+	 */
+	public TextSearch(boolean ignoreCase, CharSequence... patterns) {
+		if (patterns.length == 0) {
+			throw new IllegalArgumentException("nothing to search for");
+		}
+		this.ignoreCase = ignoreCase;
+		this.lengths = new int[patterns.length];
+		// build the trie with maps, then pack it into arrays
+		List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+		List<Integer> ends = new ArrayList<>();
+		trie.add(new TreeMap<>());
+		ends.add(-1);
+		long first = 0;
+		for (int p = 0; p < patterns.length; p++) {
+			CharSequence pattern = patterns[p];
+			if (pattern.length() == 0) {
+				throw new IllegalArgumentException("empty pattern at index " + p);
+			}
+			this.lengths[p] = pattern.length();
+			int state = 0;
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = this.fold(pattern.charAt(i));
+				if (i == 0) {
+					first |= CharMask.bit(c);
+					if (ignoreCase) {
+						// some characters beyond ASCII fold to ASCII letters, e.g. the
+						// Kelvin sign to k, and they all share one bit
+						first |= CharMask.bit(Character.toUpperCase(c)) | CharMask.bit('\u0080');
+					}
+				}
+				Integer next = trie.get(state).get(c);
+				if (next == null) {
+					next = trie.size();
+					trie.get(state).put(c, next);
+					trie.add(new TreeMap<>());
+					ends.add(-1);
+				}
+				state = next;
+			}
+			if (ends.get(state) < 0) {
+				ends.set(state, p);
+			}
+		}
+		this.firstMask = first;
+		this.longest = Arrays.stream(this.lengths).max().getAsInt();
+		int states = trie.size();
+		this.keys = new char[states][];
+		this.children = new int[states][];
+		this.output = new int[states];
+		for (int s = 0; s < states; s++) {
+			TreeMap<Character, Integer> map = trie.get(s);
+			this.keys[s] = new char[map.size()];
+			this.children[s] = new int[map.size()];
+			int i = 0;
+			for (Map.Entry<Character, Integer> e : map.entrySet()) {
+				this.keys[s][i] = e.getKey();
+				this.children[s][i] = e.getValue();
+				i++;
+			}
+			this.output[s] = ends.get(s);
+		}
+		// failure links, breadth first so a state's are set before its children's
+		this.fail = new int[states];
+		this.outputLink = new int[states];
+		this.outputLink[0] = -1;
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = 0;
+		while (head < tail) {
+			int s = queue[head++];
+			for (int i = 0; i < this.keys[s].length; i++) {
+				int t = this.children[s][i];
+				this.fail[t] = s == 0 ? 0 : this.step(this.fail[s], this.keys[s][i]);
+				int f = this.fail[t];
+				this.outputLink[t] = this.output[f] >= 0 ? f : this.outputLink[f];
+				queue[tail++] = t;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of patterns, including repeated ones
+	 */
+	public int patternCount() {
+		return this.lengths.length;
+	}
+
+	/**
+	 * @return whether letters match their other case too
+	 */
+	public boolean ignoresCase() {
+		return this.ignoreCase;
+	}
+
+	/**
+	 * Starts a search of the whole tree.
+	 */
+	public Matches find(EditTree tree) {
+		return this.find(tree, 0);
+	}
+
+	/**
+	 * Starts a search for matches beginning at or after from. Nothing is read
+	 * until the first match is asked for.
+	 *
+	 * @param tree tree to search
+	 * @param from first position a match may start at, from 0 to size
+	 * @return the matches, in the order they end
+	 * @throws IndexOutOfBoundsException if from is outside the tree
+	 */
+	public Matches find(EditTree tree, int from) {
+		if (from < 0 || from > tree.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new Matches(tree.root, tree.fastHeight(), from, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds every match in the tree, on the common fork-join pool.
+	 *
+	 * @return the start positions of all matches, in increasing order
+	 */
+	public int[] findAll(EditTree tree) {
+		return this.findAll(tree, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Finds every match, searching the subtrees of a large tree concurrently.
+	 * Each task takes the positions of one subtree, found from the ranks, and
+	 * reads up to the longest pattern's length minus one past its end, so a
+	 * match that crosses into the next subtree is found by the task it starts
+	 * in and only by that one.
+	 *
+	 * @param tree tree to search
+	 * @param pool pool the subtrees are searched on
+	 * @return the start positions of all matches, in increasing order; a start
+	 *         where several patterns match appears once for each
+	 */
+	public int[] findAll(EditTree tree, ForkJoinPool pool) {
+		Partition all = new Partition(tree.root, tree.fastHeight(), tree.root, 0, tree.size());
+		return tree.size() <= SEQUENTIAL_CUTOFF ? all.compute() : pool.invoke(all);
+	}
+
+	private char fold(char c) {
+		if (!this.ignoreCase) {
+			return c;
+		}
+		if (c < 128) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	// child of state labeled c, or -1
+	private int child(int state, char c) {
+		char[] labels = this.keys[state];
+		if (labels.length < 8) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c) {
+					return this.children[state][i];
+				}
+			}
+			return -1;
+		}
+		int i = Arrays.binarySearch(labels, c);
+		return i < 0 ? -1 : this.children[state][i];
+	}
+
+	// the state after reading c in state, following failure links as needed
+	private int step(int state, char c) {
+		while (true) {
+			int next = this.child(state, c);
+			if (next >= 0) {
+				return next;
+			}
+			if (state == 0) {
+				return 0;
+			}
+			state = this.fail[state];
+		}
+	}
+
+	/**
+	 * The matches of one search, as start positions. Overlapping matches are
+	 * all reported; matches are in the order they end, and matches ending at
+	 * the same place come longest first. Read them with the iterator methods or
+	 * stream().
+	 *
+	 * cancel() may be called from any thread. The search then stops at its next
+	 * check, within a few thousand characters, and reports no more matches.
+	 */
+	public class Matches implements PrimitiveIterator.OfInt {
+
+		private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+		private volatile boolean cancelled;
+		private int untilCancelCheck = CANCEL_CHECK_INTERVAL;
+		// nodes still to be read, with their positions; the top is read next
+		private final Node[] nodes;
+		private final int[] positions;
+		private final int readTo; // position reading stops at
+		private int top = -1;
+		private int state;
+		private int end = -1; // position of the last character read
+		// state whose outputs are still to be reported, or -1
+		private int pending = -1;
+		private int pattern = -1;
+
+		Matches(Node root, int height, int from, int readTo) {
+			this.readTo = readTo;
+			this.nodes = new Node[height + 2];
+			this.positions = new int[this.nodes.length];
+			// push the nodes at or after from along the path to it
+			Node n = root;
+			int offset = 0;
+			while (n != Node.NULL_NODE) {
+				int here = offset + n.rank;
+				if (from <= here) {
+					this.push(n, here);
+					n = n.left;
+				} else {
+					offset = here + 1;
+					n = n.right;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.cancelled) {
+				return false;
+			}
+			while (this.pending < 0) {
+				if (this.top < 0 || this.positions[this.top] >= this.readTo) {
+					return false;
+				}
+				if (--this.untilCancelCheck == 0) {
+					this.untilCancelCheck = CANCEL_CHECK_INTERVAL;
+					if (this.cancelled) {
+						return false;
+					}
+				}
+				Node n = this.nodes[this.top];
+				this.end = this.positions[this.top];
+				this.top--;
+				this.state = TextSearch.this.step(this.state, TextSearch.this.fold(n.data));
+				this.pushLeft(n.right, this.end + 1);
+				this.pending = TextSearch.this.output[this.state] >= 0 ? this.state
+						: TextSearch.this.outputLink[this.state];
+			}
+			return true;
+		}
+
+		/**
+		 * @return the position the next match starts at
+		 * @throws NoSuchElementException if there are no more matches
+		 */
+		@Override
+		public int nextInt() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int reported = this.pending;
+			this.pattern = TextSearch.this.output[reported];
+			this.pending = TextSearch.this.outputLink[reported];
+			return this.end + 1 - TextSearch.this.lengths[this.pattern];
+		}
+
+		/**
+		 * @return the index, in the order given, of the pattern the last match
+		 *         returned by nextInt() is of
+		 * @throws IllegalStateException if nextInt() hasn't returned a match yet
+		 */
+		public int pattern() {
+			if (this.pattern < 0) {
+				throw new IllegalStateException("no match yet");
+			}
+			return this.pattern;
+		}
+
+		/**
+		 * @return the remaining matches as a lazy, sequential stream
+		 */
+		public IntStream stream() {
+			return StreamSupport.intStream(
+					Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+		}
+
+		/**
+		 * Stops the search; no more matches are reported after the next check.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		// Pushes the path to the first node of n's subtree, which is read next.
+		// Outside a match, a subtree without any pattern's first character can't
+		// start one and leaves the automaton at the root, so it is skipped.
+		private void pushLeft(Node n, int offset) {
+			while (n != Node.NULL_NODE) {
+				if (this.state == 0 && (n.mask() & TextSearch.this.firstMask) == 0) {
+					return;
+				}
+				int here = offset + n.rank;
+				this.push(n, here);
+				n = n.left;
+			}
+		}
+
+		private void push(Node n, int position) {
+			this.top++;
+			this.nodes[this.top] = n;
+			this.positions[this.top] = position;
+		}
+	}
+
+	// The matches starting in one subtree, sorted.
+	private class Partition extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final Node root;
+		private final int height;
+		private final Node node;
+		private final int offset;
+		private final int size;
+
+		Partition(Node root, int height, Node node, int offset, int size) {
+			this.root = root;
+			this.height = height;
+			this.node = node;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (this.size <= SEQUENTIAL_CUTOFF) {
+				return this.scan(this.offset, this.offset + this.size);
+			}
+			int position = this.offset + this.node.rank;
+			Partition left = new Partition(this.root, this.height, this.node.left, this.offset, this.node.rank);
+			left.fork();
+			int[] right = new Partition(this.root, this.height, this.node.right, position + 1,
+					this.size - this.node.rank - 1).compute();
+			int[] here = this.scan(position, position + 1);
+			int[] before = left.join();
+			int[] all = Arrays.copyOf(before, before.length + here.length + right.length);
+			System.arraycopy(here, 0, all, before.length, here.length);
+			System.arraycopy(right, 0, all, before.length + here.length, right.length);
+			return all;
+		}
+
+		// the sorted starts of the matches starting in [from, to)
+		private int[] scan(int from, int to) {
+			int readTo = (int) Math.min((long) to + TextSearch.this.longest - 1, Integer.MAX_VALUE);
+			Matches matches = new Matches(this.root, this.height, from, readTo);
+			int[] starts = new int[16];
+			int count = 0;
+			while (matches.hasNext()) {
+				int start = matches.nextInt();
+				if (start < to) {
+					if (count == starts.length) {
+						starts = Arrays.copyOf(starts, count * 2);
+					}
+					starts[count++] = start;
+				}
+			}
+			starts = Arrays.copyOf(starts, count);
+			Arrays.sort(starts); // they came in the order they end
+			return starts;
+		}
+	}
+}
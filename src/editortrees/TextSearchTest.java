@@ -0,0 +1,159 @@
+package editortrees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests TextSearch against a brute-force search of the same text.
+ */
+public class TextSearchTest {
+
+	// start positions of all matches, ordered by where they end, longest first
+	private static int[] bruteForce(String text, int from, boolean ignoreCase, String... patterns) {
+		List<Integer> starts = new ArrayList<>();
+		for (int end = from; end < text.length(); end++) {
+			List<String> ending = new ArrayList<>();
+			for (String p : patterns) {
+				int start = end + 1 - p.length();
+				if (start >= from && text.regionMatches(ignoreCase, start, p, 0, p.length())
+						&& ending.stream().noneMatch(e -> e.length() == p.length())) {
+					ending.add(p); // a pattern repeated, maybe in another case, is one match
+				}
+			}
+			ending.sort((a, b) -> b.length() - a.length());
+			for (String p : ending) {
+				starts.add(end + 1 - p.length());
+			}
+		}
+		return starts.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static int[] search(EditTree t, int from, boolean ignoreCase, String... patterns) {
+		return new TextSearch(ignoreCase, patterns).find(t, from).stream().toArray();
+	}
+
+	@Test
+	public void testSinglePattern() {
+		String s = "the cat sat on the mat with the other cat";
+		EditTree t = new EditTree(s);
+		assertArrayEquals(new int[] { 0, 15, 28, 33 }, search(t, 0, false, "the"));
+		assertArrayEquals(new int[] { 15, 28, 33 }, search(t, 1, false, "the"));
+		assertArrayEquals(new int[] { 4, 38 }, search(t, 0, false, "cat"));
+		assertArrayEquals(new int[0], search(t, 0, false, "dog"));
+		assertArrayEquals(new int[] { 0, 1, 2 }, search(new EditTree("aaaa"), 0, false, "aa"));
+		assertArrayEquals(new int[0], search(new EditTree(), 0, false, "a"));
+	}
+
+	@Test
+	public void testMultiplePatternsReportWhichMatched() {
+		EditTree t = new EditTree("she sells sea shells");
+		TextSearch search = new TextSearch(false, "he", "she", "sea", "hell", "shells");
+		TextSearch.Matches matches = search.find(t);
+		List<String> found = new ArrayList<>();
+		String[] patterns = { "he", "she", "sea", "hell", "shells" };
+		while (matches.hasNext()) {
+			int start = matches.nextInt();
+			found.add(start + ":" + patterns[matches.pattern()]);
+		}
+		assertEquals("[0:she, 1:he, 10:sea, 14:she, 15:he, 15:hell, 14:shells]", found.toString());
+	}
+
+	@Test
+	public void testIgnoreCase() {
+		EditTree t = new EditTree("Error ERROR error eRRoR \u212Aelvin kelvin");
+		assertArrayEquals(new int[] { 0, 6, 12, 18 }, search(t, 0, true, "error"));
+		assertArrayEquals(new int[] { 12 }, search(t, 0, false, "error"));
+		assertArrayEquals(new int[] { 24, 31 }, search(t, 0, true, "KELVIN"));
+	}
+
+	@Test
+	public void testRandomTextsAgainstBruteForce() {
+		Random random = new Random(45);
+		for (int round = 0; round < 200; round++) {
+			int length = random.nextInt(round < 100 ? 50 : 5000);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				sb.append("abAB \n".charAt(random.nextInt(round % 2 == 0 ? 3 : 6)));
+			}
+			String text = sb.toString();
+			String[] patterns = new String[1 + random.nextInt(4)];
+			for (int p = 0; p < patterns.length; p++) {
+				int start = length == 0 ? 0 : random.nextInt(length);
+				int end = Math.min(length, start + 1 + random.nextInt(5));
+				patterns[p] = start < end ? text.substring(start, end) : "ab";
+			}
+			boolean ignoreCase = random.nextBoolean();
+			int from = random.nextInt(length + 1);
+			EditTree t = new EditTree(text);
+			assertArrayEquals(bruteForce(text, from, ignoreCase, patterns), search(t, from, ignoreCase, patterns));
+		}
+	}
+
+	@Test
+	public void testRareWordInLargeTree() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			sb.append((char) ('a' + i % 7));
+		}
+		sb.replace(123456, 123462, "{xyz}");
+		sb.replace(190000, 190005, "{xyz}");
+		EditTree t = new EditTree();
+		for (int i = 0; i < sb.length(); i++) {
+			t.add(sb.charAt(i));
+		}
+		assertArrayEquals(new int[] { 123456, 190000 }, search(t, 0, false, "{xyz}"));
+		assertArrayEquals(new int[] { 190000 }, search(t, 123457, false, "{xyz}"));
+	}
+
+	@Test
+	public void testLazyAndCancellable() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append("ab");
+		}
+		EditTree t = new EditTree(sb);
+		TextSearch search = new TextSearch(false, "b");
+		assertArrayEquals(new int[] { 1, 3, 5 }, search.find(t).stream().limit(3).toArray());
+		TextSearch.Matches matches = search.find(t, 10);
+		assertEquals(11, matches.nextInt());
+		matches.cancel();
+		assertTrue(matches.isCancelled());
+		assertFalse(matches.hasNext());
+		assertEquals(0, matches.stream().count());
+	}
+
+	@Test
+	public void testFindAllAcrossPartitions() {
+		Random random = new Random(46);
+		int length = 6 * TextSearch.SEQUENTIAL_CUTOFF + 12345;
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append("ab".charAt(random.nextInt(2)));
+		}
+		String text = sb.toString();
+		String[] patterns = { "abba", "b", "aaaaaa", "babab" };
+		int[] expected = bruteForce(text, 0, false, patterns);
+		Arrays.sort(expected);
+		EditTree t = new EditTree(text);
+		TextSearch search = new TextSearch(false, patterns);
+		assertArrayEquals(expected, search.findAll(t));
+		assertArrayEquals(expected, search.findAll(t, new ForkJoinPool(4)));
+		assertArrayEquals(new int[0], search.findAll(new EditTree()));
+		assertArrayEquals(new int[] { 0, 1, 2 }, search.findAll(new EditTree("abba")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyPattern() {
+		new TextSearch(false, "a", "");
+	}
+}
@@ -0,0 +1,365 @@
+package editortrees;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks the invariants of a tree (ranks, balance codes, subtree summaries,
+ * size and height) in one O(n) pass. The walk is iterative, so a degenerate
+ * tree can't overflow the stack, and nothing is allocated per node: every
+ * result is packed into a long.
+ * 
+ * A result holds a kind (OK or the first invariant found broken) and a value.
+ * For OK results the value is the number of nodes and height() gives the
+ * height. For failures, position() is the in-order position of the offending
+ * node, or the counted size for BAD_SIZE.
+ * 
+ * @author Kunaal and Tulsi
+ */
+public class TreeValidator {
+
+	public static final int OK = 0;
+	public static final int BAD_RANK = 1;
+	public static final int BAD_BALANCE = 2;
+	public static final int BAD_SIZE = 3;
+	public static final int BAD_HEIGHT = 4;
+	public static final int BAD_SUMMARY = 5;
+
+	// which invariants to check
+	public static final int CHECK_RANKS = 1;
+	public static final int CHECK_BALANCE = 2;
+	public static final int CHECK_HEIGHT = 4;
+	public static final int CHECK_SUMMARY = 8;
+	public static final int CHECK_ALL = CHECK_RANKS | CHECK_BALANCE | CHECK_HEIGHT | CHECK_SUMMARY;
+
+	// result layout: bits 0-31 size or position, 32-55 height + 1, 56-62 kind
+	private static final int HEIGHT_SHIFT = 32;
+	private static final int KIND_SHIFT = 56;
+	private static final int MAX_PACKED_HEIGHT = 0xFFFFFE;
+
+	// Subtrees this many levels below the root are validated on their own thread.
+	private static final int PARALLEL_DEPTH = 6;
+
+	private TreeValidator() {
+	}
+
+	public static int kind(long result) {
+		return (int) (result >>> KIND_SHIFT);
+	}
+
+	public static int position(long result) {
+		return (int) result;
+	}
+
+	public static int size(long result) {
+		return (int) result;
+	}
+
+	public static int height(long result) {
+		return (int) ((result >>> HEIGHT_SHIFT) & 0xFFFFFF) - 1;
+	}
+
+	static long ok(int size, int height) {
+		return ((long) (Math.min(height, MAX_PACKED_HEIGHT) + 1) << HEIGHT_SHIFT) | (size & 0xFFFFFFFFL);
+	}
+
+	static long fail(int kind, int position) {
+		return ((long) kind << KIND_SHIFT) | (position & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Describes a result for error messages and logs.
+	 */
+	public static String describe(long result) {
+		switch (kind(result)) {
+		case OK:
+			return "ok: size " + size(result) + ", height " + height(result);
+		case BAD_RANK:
+			return "rank does not match left subtree size at position " + position(result);
+		case BAD_BALANCE:
+			return "balance code does not match subtree heights at position " + position(result);
+		case BAD_SIZE:
+			return "tree holds " + position(result) + " nodes but its size field disagrees";
+		case BAD_HEIGHT:
+			return "height exceeds the AVL bound";
+		case BAD_SUMMARY:
+			return "subtree summary is out of date at position " + position(result);
+		default:
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * Checks the whole tree on the current thread.
+	 * 
+	 * @param root         root of the tree
+	 * @param expectedSize the tree's size field, or -1 to skip the size check
+	 * @param checks       CHECK_* flags
+	 * @return packed result
+	 */
+	public static long validate(Node root, int expectedSize, int checks) {
+		return finish(validateSubtree(root, checks), expectedSize, checks);
+	}
+
+	/**
+	 * Same as validate(), but the subtrees near the root are checked concurrently
+	 * on the given pool.
+	 */
+	public static long validate(Node root, int expectedSize, int checks, ForkJoinPool pool) {
+		return finish(pool.invoke(new Task(root, checks, 0)), expectedSize, checks);
+	}
+
+	/**
+	 * Checks only the root-to-pos path, in O(log n) nodes, for use after an edit
+	 * at pos. Subtree sizes are derived top-down from the tree size and the ranks
+	 * on the path, and both children of each path node must hold the sizes its
+	 * rank implies. Balance codes are checked bottom-up along the path and on each
+	 * path node's other child, which is where any rotated nodes end up. Sibling
+	 * sizes and heights are read down their spines, so a check costs O(log^2 n)
+	 * steps in the worst case, still nothing like a full O(n) pass.
+	 * 
+	 * @param root root of the tree
+	 * @param size the tree's size field
+	 * @param pos  position that was just edited; clamped to the last position
+	 * @return packed result; on success only the height is meaningful
+	 */
+	public static long validatePath(Node root, int size, int pos) {
+		if (size <= 0) {
+			return root == Node.NULL_NODE && size == 0 ? ok(0, -1) : fail(BAD_SIZE, 0);
+		}
+		pos = Math.max(0, Math.min(pos, size - 1));
+		int capacity = 64;
+		Node[] path = new Node[capacity];
+		int[] offsets = new int[capacity];
+		int top = -1;
+		Node n = root;
+		int offset = 0; // in-order position of the first node in n's subtree
+		int subtreeSize = size;
+		while (true) {
+			if (n == Node.NULL_NODE || n.rank < 0 || n.rank >= subtreeSize) {
+				return fail(BAD_RANK, top < 0 ? 0 : offsets[top] + path[top].rank);
+			}
+			int position = offset + n.rank;
+			int rightSize = subtreeSize - n.rank - 1;
+			if (!childFits(n.left, n.rank) || !childFits(n.right, rightSize)) {
+				return fail(BAD_RANK, position);
+			}
+			if (++top == capacity) {
+				capacity *= 2;
+				path = Arrays.copyOf(path, capacity);
+				offsets = Arrays.copyOf(offsets, capacity);
+			}
+			path[top] = n;
+			offsets[top] = offset;
+			if (pos < position) {
+				subtreeSize = n.rank;
+				n = n.left;
+			} else if (pos > position) {
+				offset = position + 1;
+				subtreeSize = rightSize;
+				n = n.right;
+			} else {
+				break;
+			}
+		}
+		// climb back up, checking each balance code against the child we came from
+		// and the other child's height
+		int pathHeight = -1;
+		Node below = Node.NULL_NODE;
+		for (int i = top; i >= 0; i--) {
+			n = path[i];
+			int position = offsets[i] + n.rank;
+			int leftHeight;
+			int rightHeight;
+			if (n.left == below && below != Node.NULL_NODE) {
+				leftHeight = pathHeight;
+			} else {
+				leftHeight = siblingHeight(n.left);
+				if (leftHeight < -1) {
+					return fail(BAD_BALANCE, offsets[i] + n.left.rank);
+				}
+			}
+			if (n.right == below && below != Node.NULL_NODE) {
+				rightHeight = pathHeight;
+			} else {
+				rightHeight = siblingHeight(n.right);
+				if (rightHeight < -1) {
+					return fail(BAD_BALANCE, position + 1 + n.right.rank);
+				}
+			}
+			if (!balanceMatches(n.balance, leftHeight, rightHeight)) {
+				return fail(BAD_BALANCE, position);
+			}
+			pathHeight = Math.max(leftHeight, rightHeight) + 1;
+			below = n;
+		}
+		return ok(size, pathHeight);
+	}
+
+	// The child must hold exactly size nodes. Its size is read off the ranks down
+	// its right spine, which trusts the untouched subtrees below it.
+	private static boolean childFits(Node child, int size) {
+		int spineSize = 0;
+		for (Node n = child; n != Node.NULL_NODE; n = n.right) {
+			spineSize += n.rank + 1;
+		}
+		return spineSize == size;
+	}
+
+	// Height of a node next to the path, or -2 if its own balance code is wrong.
+	private static int siblingHeight(Node n) {
+		if (n == Node.NULL_NODE) {
+			return -1;
+		}
+		int leftHeight = n.left.fastHeight();
+		int rightHeight = n.right.fastHeight();
+		if (!balanceMatches(n.balance, leftHeight, rightHeight)) {
+			return -2;
+		}
+		return Math.max(leftHeight, rightHeight) + 1;
+	}
+
+	private static long finish(long result, int expectedSize, int checks) {
+		if (kind(result) != OK) {
+			return result;
+		}
+		if (expectedSize >= 0 && size(result) != expectedSize) {
+			return fail(BAD_SIZE, size(result));
+		}
+		if ((checks & CHECK_HEIGHT) != 0 && height(result) > maxHeight(size(result))) {
+			return fail(BAD_HEIGHT, 0);
+		}
+		return result;
+	}
+
+	/**
+	 * The tallest an AVL tree with the given number of nodes can be. The smallest
+	 * tree of height h has a root and the smallest trees of heights h-1 and h-2.
+	 */
+	static int maxHeight(int nodes) {
+		int height = -1;
+		long smallest = 1; // fewest nodes for height + 1
+		long previous = 0; // fewest nodes for height
+		while (nodes >= smallest) {
+			long next = smallest + previous + 1;
+			previous = smallest;
+			smallest = next;
+			height++;
+		}
+		return height;
+	}
+
+	// Checks a node whose children have already been checked. Positions in the
+	// result are relative to the start of the node's subtree.
+	private static long checkNode(Node n, int position, int leftSize, int leftHeight, int rightSize,
+			int rightHeight, int checks) {
+		if ((checks & CHECK_RANKS) != 0 && n.rank != leftSize) {
+			return fail(BAD_RANK, position);
+		}
+		if ((checks & CHECK_BALANCE) != 0 && !balanceMatches(n.balance, leftHeight, rightHeight)) {
+			return fail(BAD_BALANCE, position);
+		}
+		if ((checks & CHECK_SUMMARY) != 0 && !n.summaryIsCurrent()) {
+			return fail(BAD_SUMMARY, position);
+		}
+		return ok(leftSize + 1 + rightSize, Math.max(leftHeight, rightHeight) + 1);
+	}
+
+	static boolean balanceMatches(Node.Code balance, int leftHeight, int rightHeight) {
+		switch (leftHeight - rightHeight) {
+		case 1:
+			return balance == Node.Code.LEFT;
+		case 0:
+			return balance == Node.Code.SAME;
+		case -1:
+			return balance == Node.Code.RIGHT;
+		default:
+			return false;
+		}
+	}
+
+	// Iterative post-order walk. Each stack frame remembers its node, the node's
+	// in-order position, and the result of its left subtree once that is done.
+	private static long validateSubtree(Node root, int checks) {
+		int capacity = 64;
+		Node[] nodes = new Node[capacity];
+		int[] positions = new int[capacity];
+		long[] leftResults = new long[capacity];
+		boolean[] leftDone = new boolean[capacity];
+		int top = -1;
+		int visited = 0;
+		long done = ok(0, -1); // result for the subtree that just finished
+		Node n = root;
+		while (true) {
+			// go as far left as possible, stacking the nodes we pass
+			while (n != Node.NULL_NODE) {
+				if (++top == capacity) {
+					capacity *= 2;
+					nodes = Arrays.copyOf(nodes, capacity);
+					positions = Arrays.copyOf(positions, capacity);
+					leftResults = Arrays.copyOf(leftResults, capacity);
+					leftDone = Arrays.copyOf(leftDone, capacity);
+				}
+				nodes[top] = n;
+				leftDone[top] = false;
+				n = n.left;
+			}
+			done = ok(0, -1);
+			while (top >= 0 && leftDone[top]) {
+				// both children done, so finish this node and pass it up
+				long left = leftResults[top];
+				done = checkNode(nodes[top], positions[top], size(left), height(left), size(done), height(done),
+						checks);
+				if (kind(done) != OK) {
+					return done;
+				}
+				nodes[top] = null;
+				top--;
+			}
+			if (top < 0) {
+				return done;
+			}
+			// left subtree of the top node is done: visit it and go right
+			leftResults[top] = done;
+			leftDone[top] = true;
+			positions[top] = visited++;
+			n = nodes[top].right;
+		}
+	}
+
+	private static class Task extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+		private final int checks;
+		private final int depth;
+
+		Task(Node node, int checks, int depth) {
+			this.node = node;
+			this.checks = checks;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Long compute() {
+			if (this.node == Node.NULL_NODE || this.depth == PARALLEL_DEPTH) {
+				return validateSubtree(this.node, this.checks);
+			}
+			Task leftTask = new Task(this.node.left, this.checks, this.depth + 1);
+			leftTask.fork();
+			long right = new Task(this.node.right, this.checks, this.depth + 1).compute();
+			long left = leftTask.join();
+			if (kind(left) != OK) {
+				return left;
+			}
+			int position = size(left);
+			if (kind(right) != OK) {
+				// right subtree positions start after the left subtree and this node
+				return fail(kind(right), position(right) + position + 1);
+			}
+			return checkNode(this.node, position, size(left), height(left), size(right), height(right),
+					this.checks);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import editortrees.Node.Code;
+
+/**
+ * Tests for the single-pass invariant checker.
+ */
+public class TreeValidatorTest {
+
+	private static EditTree randomTree(int size, long seed) {
+		Random random = new Random(seed);
+		EditTree t = new EditTree();
+		for (int i = 0; i < size; i++) {
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(i + 1));
+		}
+		return t;
+	}
+
+	// the node at the given in-order position
+	private static Node nodeAt(Node root, int pos) {
+		Node n = root;
+		while (pos != n.rank) {
+			if (pos < n.rank) {
+				n = n.left;
+			} else {
+				pos -= n.rank + 1;
+				n = n.right;
+			}
+		}
+		return n;
+	}
+
+	@Test
+	public void testValidTrees() {
+		assertEquals(TreeValidator.OK, TreeValidator.kind(new EditTree().checkInvariants()));
+		for (int size : new int[] { 1, 2, 10, 1000, 50000 }) {
+			EditTree t = randomTree(size, size);
+			long result = t.checkInvariants();
+			assertEquals(TreeValidator.describe(result), TreeValidator.OK, TreeValidator.kind(result));
+			assertEquals(size, TreeValidator.size(result));
+			assertEquals(t.slowHeight(), TreeValidator.height(result));
+			assertEquals(result, t.checkInvariants(ForkJoinPool.commonPool()));
+		}
+	}
+
+	@Test
+	public void testReportsPositionOfBadRank() {
+		EditTree t = randomTree(5000, 11);
+		Node n = nodeAt(t.root, 1234);
+		n.rank++;
+		long result = t.checkInvariants();
+		assertEquals(TreeValidator.BAD_RANK, TreeValidator.kind(result));
+		assertEquals(1234, TreeValidator.position(result));
+		assertEquals(result, t.checkInvariants(new ForkJoinPool(4)));
+	}
+
+	@Test
+	public void testReportsPositionOfBadBalance() {
+		EditTree t = randomTree(5000, 12);
+		Node n = nodeAt(t.root, 4321);
+		n.balance = n.balance == Code.SAME ? Code.LEFT : Code.SAME;
+		long result = t.checkInvariants();
+		assertEquals(TreeValidator.BAD_BALANCE, TreeValidator.kind(result));
+		assertEquals(4321, TreeValidator.position(result));
+		assertEquals(result, t.checkInvariants(new ForkJoinPool(4)));
+	}
+
+	@Test
+	public void testReportsPositionOfStaleSummary() {
+		EditTree t = randomTree(5000, 15);
+		t.enableSummaries(Brackets.DEFAULT);
+		SummaryNode n = (SummaryNode) nodeAt(t.root, 2718);
+		n.mask |= CharMask.bit('{'); // the tree holds only letters
+		long result = t.checkInvariants();
+		assertEquals(TreeValidator.BAD_SUMMARY, TreeValidator.kind(result));
+		assertEquals(2718, TreeValidator.position(result));
+		assertEquals(result, t.checkInvariants(new ForkJoinPool(4)));
+	}
+
+	@Test
+	public void testDegenerateTreeDoesNotOverflowStack() {
+		// a 200000 node chain is far deeper than any recursive check could handle
+		EditTree t = new EditTree();
+		Node chain = Node.NULL_NODE;
+		for (int i = 0; i < 200000; i++) {
+			Node n = new Node('x');
+			n.left = chain;
+			n.rank = i;
+			n.balance = i == 0 ? Code.SAME : Code.LEFT;
+			chain = n;
+		}
+		t.root = chain;
+		long result = TreeValidator.validate(t.root, 200000, TreeValidator.CHECK_RANKS);
+		assertEquals(TreeValidator.OK, TreeValidator.kind(result));
+		result = TreeValidator.validate(t.root, 200000, TreeValidator.CHECK_ALL);
+		assertEquals(TreeValidator.BAD_BALANCE, TreeValidator.kind(result));
+		assertEquals(2, TreeValidator.position(result));
+	}
+
+	@Test
+	public void testSizeMismatch() {
+		EditTree t = randomTree(100, 13);
+		long result = TreeValidator.validate(t.root, 101, TreeValidator.CHECK_ALL);
+		assertEquals(TreeValidator.BAD_SIZE, TreeValidator.kind(result));
+		assertEquals(100, TreeValidator.position(result));
+	}
+
+	@Test
+	public void testPathChecksPassOnValidEdits() {
+		EditTree t = new EditTree();
+		t.setPathCheckInterval(1);
+		Random random = new Random(14);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			if (expected.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(TreeValidator.OK, TreeValidator.kind(t.checkInvariants()));
+	}
+
+	@Test
+	public void testPathCheckCatchesCorruptRankOnTouchedPath() {
+		EditTree t = randomTree(1000, 15);
+		t.setPathCheckInterval(1);
+		// the root is on every path, so the next edit has to notice
+		t.root.rank--;
+		try {
+			t.add('z', 700);
+			fail("expected the path check to throw");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("after add(700)"));
+		}
+	}
+
+	@Test
+	public void testPathCheckFollowsAMovedSuccessor() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz0123456");
+		t.setPathCheckInterval(1);
+		int pos = t.root.rank;
+		// stands in for a delete() that gets a rank wrong on the path the successor
+		// was unlinked from, which the path to pos never goes down
+		t.addEditListener(new EditListener() {
+			@Override
+			public void inserted(int at, char ch) {
+			}
+
+			@Override
+			public void deleted(int at, int length) {
+				t.root.right.left.rank++;
+			}
+		});
+		try {
+			t.delete(pos);
+			fail("expected the path check to throw");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("after delete(" + pos + ")"));
+		}
+	}
+
+	@Test
+	public void testPathCheckSampling() {
+		EditTree t = randomTree(1000, 16);
+		t.setPathCheckInterval(3);
+		t.root.balance = t.root.balance == Code.SAME ? Code.LEFT : Code.SAME;
+		t.add('a', 0);
+		t.add('b', 0);
+		try {
+			t.add('c', 0);
+			fail("expected the third edit to be checked");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("balance code"));
+		}
+	}
+
+	@Test
+	public void testMaxHeight() {
+		assertEquals(-1, TreeValidator.maxHeight(0));
+		assertEquals(0, TreeValidator.maxHeight(1));
+		assertEquals(1, TreeValidator.maxHeight(2));
+		assertEquals(2, TreeValidator.maxHeight(4));
+		assertEquals(3, TreeValidator.maxHeight(7));
+		assertEquals(3, TreeValidator.maxHeight(11));
+		assertEquals(4, TreeValidator.maxHeight(12));
+	}
+}